@@ -0,0 +1,63 @@
+package org.runetekk;
+
+/**
+ * BitWriter.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class BitWriter {
+
+    /**
+     * The {@link ByteBuffer} that the bits are written to.
+     */
+    ByteBuffer buffer;
+
+    /**
+     * The accumulated bits that have not been written to the payload yet.
+     */
+    long accumulator;
+
+    /**
+     * The amount of bits in the accumulator that have not been written to the
+     * payload yet. This is always less than eight between calls.
+     */
+    int amountBits;
+
+    /**
+     * Puts a value into the accumulator, writing every completed byte to the
+     * payload of the buffer.
+     * @param value The value to put.
+     * @param amountBits The amount of bits to write the value as.
+     */
+    void putBits(int value, int amountBits) {
+        accumulator = accumulator << amountBits | (value & ((1L << amountBits) - 1L));
+        amountBits += this.amountBits;
+        byte[] payload = buffer.payload;
+        int offset = buffer.offset;
+        while(amountBits >= 8) {
+            amountBits -= 8;
+            payload[offset++] = (byte) (accumulator >>> amountBits);
+        }
+        buffer.offset = offset;
+        this.amountBits = amountBits;
+    }
+
+    /**
+     * Writes the remaining bits in the accumulator to the payload, padding
+     * the last byte with zeros.
+     */
+    void flush() {
+        if(amountBits > 0)
+            buffer.payload[buffer.offset++] = (byte) (accumulator << (8 - amountBits));
+        accumulator = 0L;
+        amountBits = 0;
+    }
+
+    /**
+     * Constructs a new {@link BitWriter};
+     * @param buffer The buffer to write the bits to, starting at its current offset.
+     */
+    BitWriter(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+}
@@ -129,7 +129,18 @@ public final class ByteBuffer {
     }
     
     /**
-     * Gets an unsigned word translated by 128 casted to an integer. 
+     * Gets an unsigned smart from this buffer, a byte if the value
+     * is below 128 or a word otherwise.
+     * @return The unsigned smart value.
+     */
+    int getUsmart() {
+        if((payload[offset] & 0xFF) < 128)
+            return payload[offset++] & 0xFF;
+        return getUword() - 32768;
+    }
+
+    /**
+     * Gets an unsigned word translated by 128 casted to an integer.
      * @return The unsigned word value.
      */
     int getUword128() {
@@ -200,6 +211,15 @@ public final class ByteBuffer {
                 (payload[offset++] & 0xFF);
     }
     
+    /**
+     * Gets a qword from this buffer.
+     * @return The qword value.
+     */
+    long getQword() {
+        long value = (long) getDword() << 32;
+        return value | (getDword() & 0xFFFFFFFFL);
+    }
+    
     /**
      * Puts a qword into the payload.
      * @param value The qword value.
@@ -7,6 +7,22 @@ package org.runetekk;
  */
 public class Chunk {
     
+    /**
+     * The maximum amount of bytes of item updates that a chunk records in
+     * a cycle. Viewers of a chunk that overflows are updated one by one.
+     */
+    public static final int MAXIMUM_UPDATE_SIZE = 512;
+    
+    /**
+     * The last item version given to a chunk.
+     */
+    private static int lastItemVersion;
+    
+    /**
+     * The {@link Region} that this chunk is located in.
+     */
+    Region region;
+    
     /**
      * The list of active players within this chunk.
      */
@@ -17,6 +33,57 @@ public class Chunk {
      */
     ListNode activeItems;
     
+    /**
+     * The version of the items in this chunk, changed every time an item
+     * is added, removed or revealed. Versions are unique between chunks.
+     */
+    int itemVersion;
+    
+    /**
+     * The item updates of this chunk encoded as the sub packets of a
+     * grouped chunk update, null until the first update is recorded.
+     */
+    byte[] itemUpdates;
+    
+    /**
+     * The amount of bytes of item updates recorded since the last flush.
+     */
+    int updateSize;
+    
+    /**
+     * The items updated since the last flush in the form of
+     * z << 17 | isRemoval << 16 | localId.
+     */
+    IndexList updatedItems;
+    
+    /**
+     * The chunk is queued to have its item updates flushed.
+     */
+    boolean isUpdated;
+    
+    /**
+     * More item updates were recorded than fit in the update buffer.
+     */
+    boolean isOverflowed;
+    
+    /**
+     * Gives this chunk a new item version.
+     */
+    void updateItemVersion() {
+        itemVersion = ++lastItemVersion;
+    }
+    
+    /**
+     * Clears the recorded item updates of this chunk.
+     */
+    void clearItemUpdates() {
+        updateSize = 0;
+        if(updatedItems != null)
+            updatedItems.clear();
+        isUpdated = false;
+        isOverflowed = false;
+    }
+    
     /**
      * Constructs a new {@link Chunk};
      */
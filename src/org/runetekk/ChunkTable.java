@@ -0,0 +1,78 @@
+package org.runetekk;
+
+/**
+ * ChunkTable.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class ChunkTable {
+
+    /**
+     * The chunks of this table, stored column by column over the bounds
+     * of the table.
+     */
+    Chunk[] chunks;
+
+    /**
+     * The lowest chunk x coordinate in this table.
+     */
+    int offsetX;
+
+    /**
+     * The lowest chunk y coordinate in this table.
+     */
+    int offsetY;
+
+    /**
+     * The amount of chunk columns in this table.
+     */
+    int width;
+
+    /**
+     * The amount of chunk rows in this table.
+     */
+    int height;
+
+    /**
+     * Gets the {@link Chunk} at a chunk coordinate.
+     * @param chunkX The chunk x coordinate.
+     * @param chunkY The chunk y coordinate.
+     * @return The chunk or null if there is no chunk at the coordinate.
+     */
+    Chunk get(int chunkX, int chunkY) {
+        int x = chunkX - offsetX;
+        int y = chunkY - offsetY;
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            return null;
+        return chunks[x * height + y];
+    }
+
+    /**
+     * Registers a {@link Chunk} at a chunk coordinate.
+     * @param chunkX The chunk x coordinate.
+     * @param chunkY The chunk y coordinate.
+     * @param chunk The chunk to register.
+     */
+    void put(int chunkX, int chunkY, Chunk chunk) {
+        int x = chunkX - offsetX;
+        int y = chunkY - offsetY;
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new RuntimeException("Chunk out of bounds - " + chunkX + ", " + chunkY);
+        chunks[x * height + y] = chunk;
+    }
+
+    /**
+     * Constructs a new {@link ChunkTable};
+     * @param minimumX The lowest chunk x coordinate.
+     * @param minimumY The lowest chunk y coordinate.
+     * @param maximumX The highest chunk x coordinate.
+     * @param maximumY The highest chunk y coordinate.
+     */
+    ChunkTable(int minimumX, int minimumY, int maximumX, int maximumY) {
+        offsetX = minimumX;
+        offsetY = minimumY;
+        width = maximumX - minimumX + 1;
+        height = maximumY - minimumY + 1;
+        chunks = new Chunk[width * height];
+    }
+}
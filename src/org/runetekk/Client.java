@@ -92,6 +92,33 @@ public final class Client extends Mob {
      */
     public final static int INVENTORY_SIZE = 28;   
     
+    /**
+     * The size of the bank.
+     */
+    public final static int BANK_SIZE = 352;
+    
+    /**
+     * The id of the bank interface.
+     */
+    public final static int BANK_INTERFACE = 5292;
+    
+    /**
+     * The id of the widget that displays the bank items.
+     */
+    public final static int BANK_WIDGET = 5382;
+    
+    /**
+     * The id of the interface that replaces the inventory tab while the
+     * bank is open.
+     */
+    public final static int BANK_INVENTORY_INTERFACE = 5063;
+    
+    /**
+     * The id of the widget that displays the inventory while the bank
+     * is open.
+     */
+    public final static int BANK_INVENTORY_WIDGET = 5064;
+    
     /**
      * The amount of skills.
      */
@@ -187,6 +214,33 @@ public final class Client extends Mob {
      */
     String password;
     
+    /**
+     * The base 37 encoded username of this client.
+     */
+    long nameKey;
+    
+    /**
+     * The encoded profile of this client once it was loaded, null if the
+     * player has none.
+     */
+    byte[] profile;
+    
+    /**
+     * The profile of this client was loaded.
+     */
+    boolean isProfileLoaded;
+    
+    /**
+     * The profile of this client could not be loaded.
+     */
+    boolean isProfileFailed;
+    
+    /**
+     * The {@link StateJournal} that the state changes of this client are
+     * appended to.
+     */
+    StateJournal journal;
+    
     /**
      * The unique id of this client.
      */
@@ -218,19 +272,20 @@ public final class Client extends Mob {
     long lastRecievedPing;
     
     /**
-     * The list of added players around this client.
+     * The list of added player indexes around this client.
      */
-    ListNode addedPlayers;
+    IndexList addedPlayers;
     
     /**
-     * The list of active players around this client.
+     * The list of active player indexes around this client. The order of
+     * this list mirrors the local player list of the client.
      */
-    ListNode activePlayers;
+    IndexList activePlayers;
     
     /**
      * The collection of flags for indexed players.
      */
-    byte[] playerIndex;
+    long[] playerIndex;
     
     /**
      * The current amount of listed players.
@@ -320,10 +375,20 @@ public final class Client extends Mob {
     long[][] patchTimestamps;
     
     /**
-     * The item arrays for the active widgets of this client.
+     * The item containers for the active widgets of this client.
      */
     HashTable widgetItems;
     
+    /**
+     * The widget ids of the item containers that changed during this cycle.
+     */
+    IndexList updatedWidgets;
+    
+    /**
+     * The bank interface is currently open.
+     */
+    boolean isBankOpen;
+    
             
     /**
      * The list of items active in the client.
@@ -338,7 +403,19 @@ public final class Client extends Mob {
     /**
      * The index of added items on the clients map.
      */
-    byte[] itemIndex;
+    PagedBitSet itemIndex;
+    
+    /**
+     * The item version of each chunk in the map of the client when its
+     * items were last populated.
+     */
+    int[] itemVersions;
+    
+    /**
+     * The plane, chunk and map origin that the item versions were recorded
+     * at, -1 if the versions have to be recorded again.
+     */
+    long itemSyncKey;
     
     /**
      * The skill hashes that contain information such as the dynamic and static
@@ -366,6 +443,18 @@ public final class Client extends Mob {
      */
     OutputStream outputStream;
     
+    /**
+     * Puts the enciphered opcode of a packet into a buffer. Every packet
+     * sent to a client starts here so that framing and enciphering stay
+     * in one place.
+     * @param client The client that the packet is sent to.
+     * @param buffer The buffer to put the opcode into.
+     * @param opcode The opcode of the packet.
+     */
+    static void putOpcode(Client client, ByteBuffer buffer, int opcode) {
+        buffer.putByte(opcode + client.outgoingCipher.getNextValue());
+    }
+    
     /**
      * Sends a message to a client.
      * @param client The client to write the message to.
@@ -375,7 +464,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(253 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 253);
         buffer.putByte(message.length() + 1);
         buffer.putString(message);
         client.oWritePosition += buffer.offset - position;
@@ -385,25 +474,24 @@ public final class Client extends Mob {
      * Sends an update to a widget to populate the items.
      * @param client The client to write the message to.
      * @param widgetId The widget id.
-     * @param items The items to send on the widget.
+     * @param container The item container to send.
      */
-    public static void sendWidgetItems(Client client, int widgetId, Item[] items) {
+    public static void sendWidgetItems(Client client, int widgetId, ItemContainer container) {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(53 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 53);
         buffer.putWord(0);
         buffer.putWord(widgetId);
-        buffer.putWord(items.length);
-        for(Item item : items) {
-            int id = (item == null ? -1 : item.id) + 1;
-            int amount = item == null ? 0 : item.amount;
+        buffer.putWord(container.ids.length);
+        for(int i = 0; i < container.ids.length; i++) {
+            int amount = container.amounts[i];
             if(amount >= 255) {
                 buffer.putByte(255);
                 buffer.putDwordB(amount);
             } else
                 buffer.putByte(amount);
-            buffer.putWordLe128(id);
+            buffer.putWordLe128(container.ids[i] + 1);
         }
         int oldOffset = buffer.offset;
         buffer.offset = position + 1;
@@ -412,30 +500,33 @@ public final class Client extends Mob {
     }
     
     /**
-     * Sends an update to a widget with items.
+     * Sends an update to a widget with the changed slots of an item container.
      * @param client The client to write the message to.
      * @param widgetId The widget id.
-     * @param items The items to send.
-     * @param updateSlots The slots to update.
+     * @param container The item container to send the changed slots of.
      */
-    public static void sendUpdateWidgetItems(Client client, int widgetId, Item[] items, int[] updateSlots) {
+    public static void sendUpdateWidgetItems(Client client, int widgetId, ItemContainer container) {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(34 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 34);
         buffer.putWord(0);
         buffer.putWord(widgetId);
-        for(int i = 0; i < updateSlots.length; i++) {
-            Item item = items[updateSlots[i]];
-            int id = (item == null ? -1 : item.id) + 1;
-            int amount = item == null ? 0 : item.amount;
-            buffer.putSmartB(updateSlots[i]);
-            buffer.putWord(id);
-            if(amount >= 255) {
-                buffer.putByte(255);
-                buffer.putDword(amount);
-            } else
-                buffer.putByte(amount);
+        long[] dirtySlots = container.dirtySlots;
+        for(int i = 0; i < dirtySlots.length; i++) {
+            long mask = dirtySlots[i];
+            while(mask != 0L) {
+                int slot = i << 6 | Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1L;
+                int amount = container.amounts[slot];
+                buffer.putSmartB(slot);
+                buffer.putWord(container.ids[slot] + 1);
+                if(amount >= 255) {
+                    buffer.putByte(255);
+                    buffer.putDword(amount);
+                } else
+                    buffer.putByte(amount);
+            }
         }
         int oldOffset = buffer.offset;
         buffer.offset = position + 1;
@@ -443,6 +534,39 @@ public final class Client extends Mob {
         client.oWritePosition += oldOffset - position;
     }
     
+    /**
+     * Sends every item container of a client that changed during this cycle
+     * once. A container with more than half of its slots changed is sent
+     * whole as that is smaller than sending the slots one by one. A container
+     * that was never sent whole is left for when its interface is opened.
+     * @param client The client to send the containers of.
+     */
+    public static void sendContainerUpdates(Client client) {
+        IndexList updatedWidgets = client.updatedWidgets;
+        for(int i = 0; i < updatedWidgets.size; i++) {
+            ItemContainer container = (ItemContainer) client.widgetItems.get(updatedWidgets.values[i]);
+            if(container == null || container.amountDirty < 1)
+                continue;
+            if(!container.isSent) {
+                container.clearDirty();
+                continue;
+            }
+            boolean isWhole = container.amountDirty << 1 > container.ids.length;
+            if(isWhole)
+                sendWidgetItems(client, container.widgetId, container);
+            else
+                sendUpdateWidgetItems(client, container.widgetId, container);
+            if(container.sideWidgetId >= 0 && client.isBankOpen) {
+                if(isWhole)
+                    sendWidgetItems(client, container.sideWidgetId, container);
+                else
+                    sendUpdateWidgetItems(client, container.sideWidgetId, container);
+            }
+            container.clearDirty();
+        }
+        updatedWidgets.clear();
+    }
+    
     /**
      * Sends an update to a widget to clear the items
      * @param client The client to write the message to.
@@ -452,11 +576,58 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(72 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 72);
         buffer.putWord(widgetId);
         client.oWritePosition += buffer.offset - position;
     }
     
+    /**
+     * Gets the encoded chunk hashes of a constructed map window. The payload
+     * is encoded once and cached until a custom chunk in the window changes.
+     * @param originX The chunk x coordinate of the window origin.
+     * @param originY The chunk y coordinate of the window origin.
+     * @return The encoded chunk hashes.
+     */
+    static byte[] getChunkPayload(int originX, int originY) {
+        long key = (long) originX << 16 | (originY & 0xFFFF);
+        byte[] cachedPayload = (byte[]) Main.chunkPayloads.get(key);
+        if(cachedPayload != null)
+            return cachedPayload;
+        ByteBuffer buffer = new ByteBuffer(((13 * 13 * 4 * 27) + 7) >> 3);
+        BitWriter bitWriter = new BitWriter(buffer);
+        for(int z = 0; z < 4; z++) {
+            for(int x = originX; x <= originX + 12; x++) {
+                for(int y = originY; y <= originY + 12; y++) {
+                    Chunk chunk = Main.chunkTable.get(x, y);
+                    int hash = chunk != null && chunk instanceof CustomChunk ? ((CustomChunk) chunk).chunkHashes[z] : 0;                  
+                    bitWriter.putBits(hash & 1, 1);
+                    if((hash & 1) != 0)
+                        bitWriter.putBits(hash, 26);
+                }
+            }
+        }
+        bitWriter.flush();
+        byte[] payload = new byte[buffer.offset];
+        System.arraycopy(buffer.payload, 0, payload, 0, payload.length);
+        Main.chunkPayloads.put(key, payload);
+        return payload;
+    }
+    
+    /**
+     * Removes the cached payload of every constructed map window that
+     * contains a chunk in an area.
+     * @param minimumX The lowest chunk x coordinate of the area.
+     * @param minimumY The lowest chunk y coordinate of the area.
+     * @param maximumX The highest chunk x coordinate of the area.
+     * @param maximumY The highest chunk y coordinate of the area.
+     */
+    static void invalidateChunkPayloads(int minimumX, int minimumY, int maximumX, int maximumY) {
+        for(int x = minimumX - 12; x <= maximumX; x++) {
+            for(int y = minimumY - 12; y <= maximumY; y++)
+                Main.chunkPayloads.remove((long) x << 16 | (y & 0xFFFF));
+        }
+    }
+    
     /**
      * Sends the current chunk coordinates of where the client is.
      * If the client is currently located on a custom map then the
@@ -469,40 +640,152 @@ public final class Client extends Mob {
         buffer.offset = position;
         int chunkX = client.coordX >> 3;
         int chunkY = client.coordY >> 3;
-        if(Main.regions[client.coordX >> 6][client.coordY >> 6].chunks[chunkX - ((chunkX >> 3) << 3)][chunkY - ((chunkY >> 3) << 3)] instanceof CustomChunk) {           
-            buffer.putByte(241 + client.outgoingCipher.getNextValue());
+        if(Main.chunkTable.get(chunkX, chunkY) instanceof CustomChunk) {           
+            putOpcode(client, buffer, 241);
             buffer.putWord(0);
             buffer.putWord128(chunkY);
-            buffer.initializeBitOffset();
-            for(int z = 0; z < 4; z++) {
-                for(int x = chunkX - 6; x <= chunkX + 6; x++) {
-                    for(int y = chunkY - 6; y <= chunkY + 6; y++) {
-                        Chunk chunk = Main.regions[x >> 3] != null && 
-                                      Main.regions[x >> 3][y >> 3] != null && 
-                                      Main.regions[x >> 3][y >> 3].chunks[x - ((x >> 3) << 3)] != null ? 
-                                      Main.regions[x >> 3][y >> 3].chunks[x - ((x >> 3) << 3)][y - ((y >> 3) << 3)] : null;
-                        int hash = chunk != null && chunk instanceof CustomChunk ? ((CustomChunk) chunk).chunkHashes[z] : 0;                  
-                        buffer.putBits(hash & 1, 1);
-                        if((hash & 1) != 0)
-                            buffer.putBits(hash, 26);
-                    }
-                }
-            }
-            buffer.resetBitOffset();
+            byte[] payload = getChunkPayload(chunkX - 6, chunkY - 6);
+            System.arraycopy(payload, 0, buffer.payload, buffer.offset, payload.length);
+            buffer.offset += payload.length;
             buffer.putWord(chunkX);
             int oldOffset = buffer.offset;
             buffer.offset = position + 1;
             buffer.putWord(oldOffset - (position + 3));
             client.oWritePosition += oldOffset - position;
         } else {
-            buffer.putByte(73 + client.outgoingCipher.getNextValue());
+            putOpcode(client, buffer, 73);
             buffer.putWord128(chunkX);
             buffer.putWord(chunkY);
             client.oWritePosition += buffer.offset - position;
         }             
     }
     
+    /**
+     * Opens an interface with another interface in place of the inventory tab.
+     * @param client The client to send the packet to.
+     * @param interfaceId The interface id.
+     * @param inventoryId The id of the interface in place of the inventory tab.
+     */
+    public static void sendInventoryInterface(Client client, int interfaceId, int inventoryId) {
+        ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
+        int position = client.oWritePosition;
+        buffer.offset = position;
+        putOpcode(client, buffer, 248);
+        buffer.putWord128(interfaceId);
+        buffer.putWord(inventoryId);
+        client.oWritePosition += buffer.offset - position;
+    }
+    
+    /**
+     * Moves a client to a tile. The client is placed on the tile and sent
+     * its map region in the next movement update, the steps that were
+     * queued are dropped.
+     * @param client The client to move.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The z coordinate of the tile.
+     */
+    public static void teleport(Client client, int x, int y, int z) {
+        client.coordX = x;
+        client.coordY = y;
+        client.coordZ = z;
+        client.stepQueue[client.stepQueue.length - 2] = 0;
+        client.stepQueue[client.stepQueue.length - 1] = 0;
+        client.updatedChunkX = client.updatedChunkY = -1;
+        client.cUpdatedHash = -1;
+    }
 
+    /**
+     * Opens the bank of a client. The bank is only sent whole the first time
+     * that it is opened, after that the client keeps the items and is only
+     * sent the slots that changed.
+     * @param client The client to open the bank for.
+     */
+    public static void openBank(Client client) {
+        ItemContainer bank = (ItemContainer) client.widgetItems.get(BANK_WIDGET);
+        ItemContainer inventory = (ItemContainer) client.widgetItems.get(BANK_INVENTORY_WIDGET);
+        if(!bank.isSent) {
+            bank.clearDirty();
+            sendWidgetItems(client, BANK_WIDGET, bank);
+            bank.isSent = true;
+        }
+        sendWidgetItems(client, BANK_INVENTORY_WIDGET, inventory);
+        sendInventoryInterface(client, BANK_INTERFACE, BANK_INVENTORY_INTERFACE);
+        client.isBankOpen = true;
+    }
+    
+    /**
+     * Moves an item from the inventory of a client into their bank. A noted
+     * item is banked as its unnoted form and an item that does not stack is
+     * taken from as many inventory slots as needed.
+     * @param client The client.
+     * @param slot The inventory slot of the item.
+     * @param amount The amount to deposit.
+     */
+    static void depositItem(Client client, int slot, int amount) {
+        ItemContainer inventory = (ItemContainer) client.widgetItems.get(BANK_INVENTORY_WIDGET);
+        ItemContainer bank = (ItemContainer) client.widgetItems.get(BANK_WIDGET);
+        int id = inventory.ids[slot];
+        boolean isStackable = Main.itemDefinitions.isStackable(id);
+        int available = 0;
+        if(isStackable)
+            available = inventory.amounts[slot];
+        else {
+            for(int i = 0; i < inventory.ids.length; i++) {
+                if(inventory.ids[i] == id)
+                    available++;
+            }
+        }
+        if(amount > available)
+            amount = available;
+        int bankId = Main.itemDefinitions.isNoted(id) && Main.itemDefinitions.noteIds[id] >= 0 ? Main.itemDefinitions.noteIds[id] : id;
+        if(bank.add(bankId, amount) < 0) {
+            sendMessage(client, "You don't have enough space in your bank account.");
+            return;
+        }
+        if(isStackable) {
+            inventory.remove(slot, amount);
+            return;
+        }
+        for(int i = 0; i < inventory.ids.length && amount > 0; i++) {
+            int inventorySlot = (slot + i) % inventory.ids.length;
+            if(inventory.ids[inventorySlot] == id) {
+                inventory.clear(inventorySlot);
+                amount--;
+            }
+        }
+    }
+    
+    /**
+     * Moves an item from the bank of a client into their inventory. An item
+     * that does not stack takes one inventory slot for each one withdrawn.
+     * The bank is compacted when a slot is emptied.
+     * @param client The client.
+     * @param slot The bank slot of the item.
+     * @param amount The amount to withdraw.
+     */
+    static void withdrawItem(Client client, int slot, int amount) {
+        ItemContainer inventory = (ItemContainer) client.widgetItems.get(BANK_INVENTORY_WIDGET);
+        ItemContainer bank = (ItemContainer) client.widgetItems.get(BANK_WIDGET);
+        int id = bank.ids[slot];
+        if(amount > bank.amounts[slot])
+            amount = bank.amounts[slot];
+        int withdrawn = 0;
+        if(Main.itemDefinitions.isStackable(id)) {
+            if(inventory.add(id, amount) >= 0)
+                withdrawn = amount;
+        } else {
+            while(withdrawn < amount && inventory.add(id, 1) >= 0)
+                withdrawn++;
+        }
+        if(withdrawn < amount)
+            sendMessage(client, "You don't have enough inventory space.");
+        if(withdrawn < 1)
+            return;
+        bank.remove(slot, withdrawn);
+        if(bank.ids[slot] < 0)
+            bank.compact();
+    }
     
     /**
      * Sets the tab interface id for a client.
@@ -514,7 +797,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(71 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 71);
         buffer.putWord(interId);
         buffer.putByte128(tabId);
         client.oWritePosition += buffer.offset - position;
@@ -529,7 +812,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(74 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 74);
         buffer.putWordLe(archiveId);
         client.oWritePosition += buffer.offset - position;
     }
@@ -544,7 +827,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte((value < 256 ? 36 : 87) + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, value < 256 ? 36 : 87);
         buffer.putWordLe(configId);
         if(value < 256)
             buffer.putByte(value);
@@ -562,7 +845,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(249 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 249);
         buffer.putByte128(isMember ? 0 : 1);
         buffer.putWordLe128(client.localId.value);
         client.oWritePosition += buffer.offset - position;
@@ -578,7 +861,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(85 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 85);
         buffer.putByteA(coordY);
         buffer.putByteA(coordX);
         client.oWritePosition += buffer.offset - position;
@@ -594,12 +877,47 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(215 + (spoof ? client.outgoingCipher.getNextValue() : 0));
+        if(spoof)
+            putOpcode(client, buffer, 215);
+        else
+            buffer.putByte(215);
+        putGroundItem(buffer, groundItem);
+        client.oWritePosition += buffer.offset - position;
+    }
+    
+    /**
+     * Puts the body of the ground item packet into a buffer.
+     * @param buffer The buffer to put the body into.
+     * @param groundItem The ground item to put.
+     */
+    static void putGroundItem(ByteBuffer buffer, GroundItem groundItem) {
         buffer.putWord128(groundItem.id);
         buffer.putByteB((groundItem.coordX - ((groundItem.coordX >> 3) << 3)) << 4 | 
                          groundItem.coordY - ((groundItem.coordY >> 3) << 3));
         buffer.putWord128(-1);
         buffer.putWord(groundItem.amount);
+    }
+    
+    /**
+     * Sends the new amount of a ground item.
+     * @param client The client to send the amount to.
+     * @param groundItem The ground item that changed.
+     * @param oldAmount The amount that the client knows the item by.
+     * @param spoof Option to spoof the packet with the next isaac value.
+     */
+    public static void sendGroundItemAmount(Client client, GroundItem groundItem, int oldAmount, boolean spoof) {
+        ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
+        int position = client.oWritePosition;
+        buffer.offset = position;
+        if(spoof)
+            putOpcode(client, buffer, 84);
+        else
+            buffer.putByte(84);
+        buffer.putByte((groundItem.coordX - ((groundItem.coordX >> 3) << 3)) << 4 | 
+                        groundItem.coordY - ((groundItem.coordY >> 3) << 3));
+        buffer.putWord(groundItem.id);
+        buffer.putWord(oldAmount);
+        buffer.putWord(groundItem.amount);
         client.oWritePosition += buffer.offset - position;
     }
     
@@ -613,11 +931,94 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(156 + (spoof ? client.outgoingCipher.getNextValue() : 0));
+        if(spoof)
+            putOpcode(client, buffer, 156);
+        else
+            buffer.putByte(156);
+        putRemoveGroundItem(buffer, groundItem);
+        client.oWritePosition += buffer.offset - position;
+    }
+    
+    /**
+     * Puts the body of the remove ground item packet into a buffer.
+     * @param buffer The buffer to put the body into.
+     * @param groundItem The ground item to remove.
+     */
+    static void putRemoveGroundItem(ByteBuffer buffer, GroundItem groundItem) {
         buffer.putByte128((groundItem.coordX - ((groundItem.coordX >> 3) << 3)) << 4 | 
                            groundItem.coordY - ((groundItem.coordY >> 3) << 3));
         buffer.putWord(groundItem.id);
-        client.oWritePosition += buffer.offset - position;
+    }
+    
+    /**
+     * Sends the item updates recorded by a chunk as a grouped chunk update.
+     * The updates are only sent if every one of them applies to the client,
+     * otherwise the client is left to be updated by {@link #populateItems}
+     * and {@link #processItems}. The node of a removed item is unlinked here
+     * so that {@link #processItems} knows the removal was delivered.
+     * @param client The client to send the updates to.
+     * @param chunk The chunk that recorded the updates.
+     * @param chunkX The chunk x coordinate.
+     * @param chunkY The chunk y coordinate.
+     * @return If the updates were sent.
+     */
+    static boolean sendItemUpdates(Client client, Chunk chunk, int chunkX, int chunkY) {
+        if(client.state < 2 || client.updatedChunkX < 0 || client.outgoingBuffer == null)
+            return false;
+        int localX = chunkX - client.updatedChunkX;
+        int localY = chunkY - client.updatedChunkY;
+        if(localX < 0 || localY < 0 || localX > 12 || localY > 12)
+            return false;
+        int dCx = chunkX - (client.coordX >> 3);
+        int dCy = chunkY - (client.coordY >> 3);
+        int[] updatedItems = chunk.updatedItems.values;
+        int amountUpdated = chunk.updatedItems.size;
+        for(int i = 0; i < amountUpdated; i++) {
+            int update = updatedItems[i];
+            int position = update & 0xFFFF;
+            boolean isActive = client.itemIndex.get(position);
+            if(update >>> 17 != client.coordZ)
+                return false;
+            if((update & 1 << 16) != 0 ? !isActive : isActive || dCx >= 6 || dCy >= 6 || dCx <= -6 || dCy <= -6)
+                return false;
+        }
+        ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
+        int position = client.oWritePosition;
+        buffer.offset = position;
+        putOpcode(client, buffer, 60);
+        buffer.putWord(0);
+        buffer.putByte(localY << 3);
+        buffer.putByteA(localX << 3);
+        System.arraycopy(chunk.itemUpdates, 0, buffer.payload, buffer.offset, chunk.updateSize);
+        buffer.offset += chunk.updateSize;
+        int oldOffset = buffer.offset;
+        buffer.offset = position + 1;
+        buffer.putWord(oldOffset - (position + 3));
+        client.oWritePosition += oldOffset - position;
+        for(int i = 0; i < amountUpdated; i++) {
+            int update = updatedItems[i];
+            int itemPosition = update & 0xFFFF;
+            if((update & 1 << 16) != 0) {
+                ListNode node = client.activeItems;
+                while((node = node.childNode) != null) {
+                    if(!(node instanceof GroundItemNode))
+                        break;
+                    if(((GroundItemNode) node).groundItem.localId == itemPosition) {
+                        node.removeFromList();
+                        break;
+                    }
+                }
+                client.itemIndex.clear(itemPosition);
+                continue;
+            }
+            ListNode idNode = new GroundItemNode(Main.groundItems.get(itemPosition));
+            idNode.parentNode = client.activeItems.parentNode;
+            idNode.childNode = client.activeItems;
+            idNode.parentNode.childNode = idNode;
+            idNode.childNode.parentNode = idNode;
+            client.itemIndex.set(itemPosition);
+        }
+        return true;
     }
     
     /**
@@ -630,7 +1031,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(64 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 64);
         buffer.putByteA(coordX);
         buffer.putByteB(coordY);
         client.oWritePosition += buffer.offset - position;
@@ -645,7 +1046,7 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(134 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 134);
         buffer.putByte(id);
         buffer.putDwordA(client.skillExperience[id]);
         int dynamicLevel = client.skillHashes[id] & 0xFF;
@@ -661,9 +1062,9 @@ public final class Client extends Mob {
         ByteBuffer buffer = new ByteBuffer(client.outgoingBuffer);
         int position = client.oWritePosition;
         buffer.offset = position;
-        buffer.putByte(81 + client.outgoingCipher.getNextValue());
+        putOpcode(client, buffer, 81);
         buffer.putWord(0);
-        buffer.initializeBitOffset();
+        BitWriter bitWriter = new BitWriter(buffer);
         boolean localUpdate = client.activeFlags != 0;
         boolean localMovementUpdate = true;
         int amountData = client.lastUpdates[client.lastUpdates.length - 1] > client.lastUpdates[client.lastUpdates.length - 2] ? (MAXIMUM_POINTS - client.lastUpdates[client.lastUpdates.length - 2]) + client.lastUpdates[client.lastUpdates.length - 1] : client.lastUpdates[client.lastUpdates.length - 2] - client.lastUpdates[client.lastUpdates.length - 1];
@@ -671,34 +1072,35 @@ public final class Client extends Mob {
             throw new RuntimeException("eek");
         else if(amountData <= 0)
             localMovementUpdate = false;
-        buffer.putBits(localUpdate || localMovementUpdate ? 1 : 0, 1);
+        bitWriter.putBits(localUpdate || localMovementUpdate ? 1 : 0, 1);
         if(localUpdate || localMovementUpdate) {
             if(localMovementUpdate) {
                 int updateHash = client.lastUpdates[client.lastUpdates[client.lastUpdates.length - 1]];
-                buffer.putBits(updateHash & 3, 2);
+                bitWriter.putBits(updateHash & 3, 2);
                 if((updateHash & 3) == 1) {
-                    buffer.putBits(updateHash >> 2, 3); 
-                    buffer.putBits(localUpdate ? 1 : 0, 1);
+                    bitWriter.putBits(updateHash >> 2, 3); 
+                    bitWriter.putBits(localUpdate ? 1 : 0, 1);
                 } else if((updateHash & 3) == 2) {
-                    buffer.putBits((updateHash >> 2) & 7, 3);
-                    buffer.putBits(updateHash >> 5, 3);
-                    buffer.putBits(localUpdate ? 1 : 0, 1);
+                    bitWriter.putBits((updateHash >> 2) & 7, 3);
+                    bitWriter.putBits(updateHash >> 5, 3);
+                    bitWriter.putBits(localUpdate ? 1 : 0, 1);
                 } else if((updateHash & 3) == 3) {
-                    buffer.putBits((updateHash >> 2) & 3, 2);
-                    buffer.putBits((updateHash >> 4) & 1, 1);
-                    buffer.putBits(localUpdate ? 1 : 0, 1);
-                    buffer.putBits((updateHash >> 12) & 127, 7);
-                    buffer.putBits((updateHash >> 5) & 127, 7);
+                    bitWriter.putBits((updateHash >> 2) & 3, 2);
+                    bitWriter.putBits((updateHash >> 4) & 1, 1);
+                    bitWriter.putBits(localUpdate ? 1 : 0, 1);
+                    bitWriter.putBits((updateHash >> 12) & 127, 7);
+                    bitWriter.putBits((updateHash >> 5) & 127, 7);
                 }
             } else
-                buffer.putBits(0, 2);
+                bitWriter.putBits(0, 2);
         }
-        buffer.putBits(client.listedPlayers, 8);
-        ListNode node = client.activePlayers;
-        while((node = node.childNode) != null) {
-            if(!(node instanceof IntegerNode))
-                break;
-            Client pClient = Main.clientArray[((IntegerNode) node).value];
+        bitWriter.putBits(client.listedPlayers, 8);
+        int[] activePlayers = client.activePlayers.values;
+        int amountActive = client.activePlayers.size;
+        int writeOffset = 0;
+        for(int i = 0; i < amountActive; i++) {
+            int index = activePlayers[i];
+            Client pClient = Main.clientArray[index];
             int dx = 0;
             int dy = 0;
             if(pClient != null) {
@@ -708,66 +1110,64 @@ public final class Client extends Mob {
             boolean remove = pClient == null || dx > 15 || dx < -15 || dy > 15 || dy < -15;
             if(remove) {
                 client.listedPlayers--;
-                client.playerIndex[((IntegerNode) node).value >> 3] &= ~(1 << (((IntegerNode) node).value & 7));
-                buffer.putBits(1, 1);
-                buffer.putBits(3, 2);
-                node.removeFromList();
+                client.playerIndex[index >> 6] &= ~(1L << (index & 63));
+                bitWriter.putBits(1, 1);
+                bitWriter.putBits(3, 2);
                 continue;
             }
-            boolean update = pClient.activeFlags != 0 || client.appearanceUpdates[((IntegerNode) node).value];
+            activePlayers[writeOffset++] = index;
+            boolean update = pClient.activeFlags != 0 || client.appearanceUpdates[index];
             boolean movementUpdate = true;
             amountData = pClient.lastUpdates[pClient.lastUpdates.length - 1] > pClient.lastUpdates[pClient.lastUpdates.length - 2] ? (MAXIMUM_POINTS - pClient.lastUpdates[pClient.lastUpdates.length - 2]) + pClient.lastUpdates[pClient.lastUpdates.length - 1] : pClient.lastUpdates[pClient.lastUpdates.length - 2] - pClient.lastUpdates[pClient.lastUpdates.length - 1];
             if(amountData < 0)
                 throw new RuntimeException("eek");
             if(amountData <= 0 || (pClient.lastUpdates[pClient.lastUpdates[pClient.lastUpdates.length - 1]] & 3) == 3)
                 movementUpdate = false;
-            buffer.putBits(update || movementUpdate ? 1 : 0, 1);
+            bitWriter.putBits(update || movementUpdate ? 1 : 0, 1);
             if(update || movementUpdate) {
                 if(movementUpdate) {
                     int updateHash = pClient.lastUpdates[pClient.lastUpdates[pClient.lastUpdates.length - 1]];
-                    buffer.putBits(updateHash & 3, 2);
+                    bitWriter.putBits(updateHash & 3, 2);
                     if((updateHash & 3) == 1) {
-                        buffer.putBits(updateHash >> 2, 3); 
-                        buffer.putBits(localUpdate ? 1 : 0, 1);
+                        bitWriter.putBits(updateHash >> 2, 3); 
+                        bitWriter.putBits(localUpdate ? 1 : 0, 1);
                     } else if((updateHash & 3) == 2) {
-                        buffer.putBits((updateHash >> 2) & 7, 3);
-                        buffer.putBits(updateHash >> 5, 3);
-                        buffer.putBits(localUpdate ? 1 : 0, 1);
+                        bitWriter.putBits((updateHash >> 2) & 7, 3);
+                        bitWriter.putBits(updateHash >> 5, 3);
+                        bitWriter.putBits(localUpdate ? 1 : 0, 1);
                     }
                 } else
-                    buffer.putBits(0, 2);
+                    bitWriter.putBits(0, 2);
             }
         }
-        node = client.addedPlayers;
-        while((node = node.childNode) != null) {
-            if(!(node instanceof IntegerNode))
-                break;
-            Client pClient = Main.clientArray[((IntegerNode) node).value];
-            node.removeFromList();
+        client.activePlayers.size = writeOffset;
+        int[] addedPlayers = client.addedPlayers.values;
+        int amountAdded = client.addedPlayers.size;
+        for(int i = 0; i < amountAdded; i++) {
+            int index = addedPlayers[i];
+            Client pClient = Main.clientArray[index];
             if(pClient != null) {
                 int dx = pClient.coordX - client.coordX;
                 int dy = pClient.coordY - client.coordY;
-                buffer.putBits(((IntegerNode) node).value, 11);
-                buffer.putBits(1, 1);
+                bitWriter.putBits(index, 11);
+                bitWriter.putBits(1, 1);
                 /* Unsure about what else this value could be used for */
-                buffer.putBits(1, 1); 
+                bitWriter.putBits(1, 1); 
                 if(dx < 0)
                     dx += 32;
                 if(dy < 0)
                     dy += 32;
-                buffer.putBits(dy, 5);
-                buffer.putBits(dx, 5);
+                bitWriter.putBits(dy, 5);
+                bitWriter.putBits(dx, 5);
                 client.listedPlayers++;
-                client.appearanceUpdates[((IntegerNode) node).value] = true;
-                node.parentNode = client.activePlayers.parentNode;
-                node.childNode = client.activePlayers;
-                node.parentNode.childNode = node;
-                node.childNode.parentNode = node;
-            }
+                client.appearanceUpdates[index] = true;
+                client.activePlayers.add(index);
+            } else
+                client.playerIndex[index >> 6] &= ~(1L << (index & 63));
         }
-        buffer.putBits(2047, 11);
-        buffer.resetBitOffset();
-        node = client.activePlayers;
+        client.addedPlayers.clear();
+        bitWriter.putBits(2047, 11);
+        bitWriter.flush();
         if(localUpdate) {
             int len = client.flagBuffer.offset;
             if(len < 1)
@@ -777,15 +1177,16 @@ public final class Client extends Mob {
                 buffer.offset += len;
             }
         }
-        while((node = node.childNode) != null) {
-            if(!(node instanceof IntegerNode))
-                break;
-            Client pClient = Main.clientArray[((IntegerNode) node).value];
+        activePlayers = client.activePlayers.values;
+        amountActive = client.activePlayers.size;
+        for(int i = 0; i < amountActive; i++) {
+            int index = activePlayers[i];
+            Client pClient = Main.clientArray[index];
             ByteBuffer flagBuffer = pClient.activeFlags != 0 ? pClient.flagBuffer : null;
-            if(client.appearanceUpdates[((IntegerNode) node).value] && (pClient.activeFlags & 1 << 7) == 0) {
+            if(client.appearanceUpdates[index] && (pClient.activeFlags & 1 << 7) == 0) {
                 flagBuffer = new ByteBuffer(122);
                 Client.writeFlaggedUpdates(pClient, flagBuffer, pClient.activeFlags | 1 << 7);
-                client.appearanceUpdates[((IntegerNode) node).value] = false;
+                client.appearanceUpdates[index] = false;
             }
             if(flagBuffer != null) {
                 int len = flagBuffer.offset;
@@ -914,31 +1315,24 @@ public final class Client extends Mob {
     public static void populatePlayers(Client client) {
         for(int chunkX = (client.coordX >> 3) - 2; chunkX <= (client.coordX >> 3) + 2; chunkX++) {
             for(int chunkY = (client.coordY >> 3) - 2; chunkY <= (client.coordY >> 3) + 2; chunkY++) {
-                Region region = null;
-                if(Main.regions != null && Main.regions[chunkX >> 3] != null && (region = Main.regions[chunkX >> 3][chunkY >> 3]) != null) {
-                    Chunk chunk = null;
-                    if(region.chunks != null && region.chunks[chunkX - ((chunkX >> 3) << 3)] != null && (chunk = region.chunks[chunkX - ((chunkX >> 3) << 3)][chunkY - ((chunkY >> 3) << 3)]) != null) {
-                        ListNode node = chunk.activePlayers;
-                        while((node = node.childNode) != null) {
-                            if(!(node instanceof Entity) || client.listedPlayers > Client.PLAYER_UPDATES)
-                                break;
-                            if(!(node instanceof Client))
-                                continue;
-                            Client pClient = (Client) node;
-                            int position = pClient.localId.value;
-                            int dCx = (pClient.coordX >> 3) - (client.coordX >> 3);
-                            int dCy = (pClient.coordY >> 3) - (client.coordY >> 3);
-                            if(position == client.localId.value || (client.playerIndex[position >> 3] & (1 << (position & 7))) != 0 || 
-                               dCx >= 2  || dCy >= 2 || 
-                               dCx <= -2 || dCy <= -2)
-                                continue;
-                            ListNode idNode = new IntegerNode(position);
-                            idNode.parentNode = client.addedPlayers.parentNode;
-                            idNode.childNode = client.addedPlayers;
-                            idNode.parentNode.childNode = idNode;
-                            idNode.childNode.parentNode = idNode;
-                            client.playerIndex[position >> 3] |= 1 << (position & 7);
-                        }
+                Chunk chunk = Main.chunkTable.get(chunkX, chunkY);
+                if(chunk != null) {
+                    ListNode node = chunk.activePlayers;
+                    while((node = node.childNode) != null) {
+                        if(!(node instanceof Entity) || client.listedPlayers > Client.PLAYER_UPDATES)
+                            break;
+                        if(!(node instanceof Client))
+                            continue;
+                        Client pClient = (Client) node;
+                        int position = pClient.localId.value;
+                        int dCx = (pClient.coordX >> 3) - (client.coordX >> 3);
+                        int dCy = (pClient.coordY >> 3) - (client.coordY >> 3);
+                        if(position == client.localId.value || (client.playerIndex[position >> 6] & (1L << (position & 63))) != 0 || 
+                           dCx >= 2  || dCy >= 2 || 
+                           dCx <= -2 || dCy <= -2)
+                            continue;
+                        client.addedPlayers.add(position);
+                        client.playerIndex[position >> 6] |= 1L << (position & 63);
                     }
                 }
             }
@@ -952,42 +1346,44 @@ public final class Client extends Mob {
     public static void populateItems(Client client) {
         if(client.updatedChunkX < 0 && client.updatedChunkY < 0)
             return;
+        long syncKey = (long) client.coordZ << 56 | (long) (client.coordX >> 3) << 42 | (long) (client.coordY >> 3) << 28 | 
+                       (long) client.updatedChunkX << 14 | client.updatedChunkY;
+        if(syncKey != client.itemSyncKey) {
+            for(int i = 0; i < client.itemVersions.length; i++)
+                client.itemVersions[i] = -1;
+            client.itemSyncKey = syncKey;
+        }
         for(int chunkX = client.updatedChunkX; chunkX <= client.updatedChunkX + 12; chunkX++) {
             for(int chunkY = client.updatedChunkY; chunkY <= client.updatedChunkY + 12; chunkY++) {
                 boolean sendCoords = true;
-                Region region = null;
-                if(Main.regions != null && Main.regions[chunkX >> 3] != null && (region = Main.regions[chunkX >> 3][chunkY >> 3]) != null) {
-                    Chunk chunk = null;
-                    if(region.chunks != null && region.chunks[chunkX - ((chunkX >> 3) << 3)] != null && (chunk = region.chunks[chunkX - ((chunkX >> 3) << 3)][chunkY - ((chunkY >> 3) << 3)]) != null) {
-                        ListNode node = chunk.activeItems;
-                        while((node = node.childNode) != null) {
-                            if(!(node instanceof Entity))
-                                break;
-                            if(!(node instanceof GroundItem))
-                                continue;
-                            GroundItem groundItem = (GroundItem) node;
-                            if(groundItem.destroyTime < System.currentTimeMillis()) {
-                                groundItem.destroy();
-                                continue;
-                            }
-                            int position = groundItem.localId;
-                            int dCx = (groundItem.coordX >> 3) - (client.coordX >> 3);
-                            int dCy = (groundItem.coordY >> 3) - (client.coordY >> 3);
-                            if(groundItem.appearTime > System.currentTimeMillis() && groundItem.creatorId != client.localId.value || (client.itemIndex[position >> 3] & (1 << (position & 7))) != 0 || 
-                               dCx >= 6  || dCy >= 6 || dCx <= -6 || dCy <= -6 || groundItem.coordZ != client.coordZ)
-                                continue;
-                            if(sendCoords) {                              
-                                sendMapCoords(client, (chunkX - client.updatedChunkX) << 3, (chunkY - client.updatedChunkY) << 3);
-                                sendCoords = false;
-                            }
-                            sendGroundItem(client, groundItem, true);
-                            ListNode idNode = new IntegerNode(groundItem.currentUpdate << 16 | position);
-                            idNode.parentNode = client.activeItems.parentNode;
-                            idNode.childNode = client.activeItems;
-                            idNode.parentNode.childNode = idNode;
-                            idNode.childNode.parentNode = idNode;
-                            client.itemIndex[position >> 3] |= 1 << (position & 7);
+                Chunk chunk = Main.chunkTable.get(chunkX, chunkY);
+                int index = (chunkX - client.updatedChunkX) * 13 + (chunkY - client.updatedChunkY);
+                if(chunk != null && client.itemVersions[index] != chunk.itemVersion) {
+                    client.itemVersions[index] = chunk.itemVersion;
+                    ListNode node = chunk.activeItems;
+                    while((node = node.childNode) != null) {
+                        if(!(node instanceof Entity))
+                            break;
+                        if(!(node instanceof GroundItem))
+                            continue;
+                        GroundItem groundItem = (GroundItem) node;
+                        int position = groundItem.localId;
+                        int dCx = (groundItem.coordX >> 3) - (client.coordX >> 3);
+                        int dCy = (groundItem.coordY >> 3) - (client.coordY >> 3);
+                        if(!groundItem.isPublic && groundItem.creatorId != client.localId.value || client.itemIndex.get(position) || 
+                           dCx >= 6  || dCy >= 6 || dCx <= -6 || dCy <= -6 || groundItem.coordZ != client.coordZ)
+                            continue;
+                        if(sendCoords) {                              
+                            sendMapCoords(client, (chunkX - client.updatedChunkX) << 3, (chunkY - client.updatedChunkY) << 3);
+                            sendCoords = false;
                         }
+                        sendGroundItem(client, groundItem, true);
+                        ListNode idNode = new GroundItemNode(groundItem);
+                        idNode.parentNode = client.activeItems.parentNode;
+                        idNode.childNode = client.activeItems;
+                        idNode.parentNode.childNode = idNode;
+                        idNode.childNode.parentNode = idNode;
+                        client.itemIndex.set(position);
                     }
                 }
             }
@@ -995,29 +1391,36 @@ public final class Client extends Mob {
     }
     
     /**
-     * Processes the items currently in the clients active item list.
+     * Processes the items currently in the clients active item list. An item
+     * whose slot was reused is still in the list only if the client did not
+     * receive its removal with the chunk updates, the removal is then sent
+     * here and the slot is populated again.
      * @param client The client to process the items for.
      */
     public static void processItems(Client client) {
         ListNode node = client.activeItems;
         while((node = node.childNode) != null) {
-            if(!(node instanceof IntegerNode))
+            if(!(node instanceof GroundItemNode))
                 break;
-            GroundItem groundItem = Main.groundItems[((IntegerNode) node).value & 0xFFFF];
-            int dCx = 0;
-            int dCy = 0;
-            if(groundItem != null) {
-                dCx = ((groundItem.coordX >> 3) - client.updatedChunkX) << 3;
-                dCy = ((groundItem.coordY >> 3) - client.updatedChunkY) << 3;
+            GroundItem groundItem = ((GroundItemNode) node).groundItem;
+            int position = groundItem.localId;
+            if(!client.itemIndex.get(position)) {
+                node.removeFromList();
+                continue;
             }
-            boolean remove = groundItem == null || groundItem.coordZ != client.coordZ ||  groundItem.remove || dCx > 104  || dCy > 104 || dCx < 0 || dCy < 0;
-            if(remove) {
+            boolean isReused = Main.groundItems.get(position) != groundItem;
+            int dCx = ((groundItem.coordX >> 3) - client.updatedChunkX) << 3;
+            int dCy = ((groundItem.coordY >> 3) - client.updatedChunkY) << 3;
+            boolean isVisible = groundItem.coordZ == client.coordZ && dCx <= 104 && dCy <= 104 && dCx >= 0 && dCy >= 0;
+            if(isReused || groundItem.remove || !isVisible) {
                 node.removeFromList();
-                if(groundItem != null && groundItem.remove) {
+                if((isReused || groundItem.remove) && isVisible) {
                     Client.sendMapCoords(client, dCx, dCy);
                     Client.sendRemoveGroundItem(client, groundItem, true);
                 }
-                client.itemIndex[(((IntegerNode) node).value & 0xFFFF) >> 3] &= ~(1 << (((IntegerNode) node).value & 7));
+                client.itemIndex.clear(position);
+                if(isReused)
+                    client.itemSyncKey = -1L;
             }
         }
     }
@@ -1066,7 +1469,9 @@ public final class Client extends Mob {
     }
     
     /**
-     * Destroys this {@link Client}.
+     * Destroys this {@link Client}. The state that is part of the profile is
+     * kept so that the profile can still be saved after the client was
+     * removed.
      */
     public void destroy() {
         removeFromList();
@@ -1082,14 +1487,20 @@ public final class Client extends Mob {
         addedPlayers = null;
         animationIds = null;
         appearanceUpdates = null;
-        appearanceStates = null;
-        colorIds = null;
         flagBuffer = null;
         commandStr = null;
         localId = null;
         username = null;
         password = null;
-        activeMusic = null;
+    }
+    
+    /**
+     * Constructs a new {@link Client}; The client has no connection, it is
+     * only used to benchmark the updates.
+     */
+    Client() {
+        timeoutStamp = -1L;
+        isRunActive = true;
     }
     
     /**
@@ -0,0 +1,144 @@
+package org.runetekk;
+
+import java.nio.MappedByteBuffer;
+
+/**
+ * CollisionMap.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class CollisionMap {
+
+    /**
+     * The flag for a tile that cannot be walked on.
+     */
+    public static final int BLOCKED = 1;
+
+    /**
+     * The flag for a tile with a wall on its west side.
+     */
+    public static final int WEST_WALL = 2;
+
+    /**
+     * The flag for a tile with a wall on its south side.
+     */
+    public static final int SOUTH_WALL = 4;
+
+    /**
+     * The amount of bytes in the offset table at the start of the file, one
+     * dword for each of the possible regions.
+     */
+    public static final int TABLE_SIZE = 256 * 256 * 4;
+
+    /**
+     * The amount of bytes of flags for a region, a nibble for each tile of
+     * the four planes.
+     */
+    public static final int REGION_SIZE = 4 * 64 * 64 / 2;
+
+    /**
+     * The mapped collision file, null if there is none and every tile can
+     * be walked on.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * Adds a flag to a tile of the regions that are being built. The flag is
+     * dropped if the region of the tile was not created.
+     * @param regions The regions being built, indexed by region hash.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The plane of the tile.
+     * @param flag The flag to add.
+     */
+    static void mark(byte[][] regions, int x, int y, int z, int flag) {
+        if(x < 0 || y < 0 || x >= 256 * 64 || y >= 256 * 64)
+            return;
+        byte[] region = regions[(x >> 6) << 8 | (y >> 6)];
+        if(region == null)
+            return;
+        int index = z << 12 | (x & 63) << 6 | (y & 63);
+        region[index >> 1] |= flag << ((index & 1) << 2);
+    }
+
+    /**
+     * Gets the flags of a tile. Tiles of regions that have no data or of a
+     * map without a collision file have no flags set.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The plane of the tile.
+     * @return The flags of the tile.
+     */
+    int getFlags(int x, int y, int z) {
+        if(buffer == null || x < 0 || y < 0 || x >= 256 * 64 || y >= 256 * 64)
+            return 0;
+        int offset = buffer.getInt(((x >> 6) << 8 | (y >> 6)) << 2);
+        if(offset == 0)
+            return 0;
+        int index = z << 12 | (x & 63) << 6 | (y & 63);
+        return buffer.get(offset + (index >> 1)) >> ((index & 1) << 2) & 0xF;
+    }
+
+    /**
+     * Checks if a tile cannot be walked on.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The plane of the tile.
+     * @return If the tile is blocked.
+     */
+    boolean isBlocked(int x, int y, int z) {
+        return (getFlags(x, y, z) & BLOCKED) != 0;
+    }
+
+    /**
+     * Checks if a step can be taken from a tile to one of its neighbours.
+     * A diagonal step also needs both of the straight steps that it passes
+     * to be open.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The plane of the tile.
+     * @param dx The x delta of the step, between -1 and 1.
+     * @param dy The y delta of the step, between -1 and 1.
+     * @return If the step can be taken.
+     */
+    boolean canMove(int x, int y, int z, int dx, int dy) {
+        if(isBlocked(x + dx, y + dy, z))
+            return false;
+        if(dx != 0 && dy != 0)
+            return canStep(x, y, z, dx, 0) && canStep(x, y, z, 0, dy) &&
+                   canStep(x + dx, y, z, 0, dy) && canStep(x, y + dy, z, dx, 0);
+        return canStep(x, y, z, dx, dy);
+    }
+
+    /**
+     * Checks if a straight step can be taken from a tile to one of its
+     * neighbours.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The plane of the tile.
+     * @param dx The x delta of the step, between -1 and 1.
+     * @param dy The y delta of the step, between -1 and 1.
+     * @return If the step can be taken.
+     */
+    private boolean canStep(int x, int y, int z, int dx, int dy) {
+        if(isBlocked(x + dx, y + dy, z))
+            return false;
+        if(dx < 0)
+            return (getFlags(x, y, z) & WEST_WALL) == 0;
+        if(dx > 0)
+            return (getFlags(x + 1, y, z) & WEST_WALL) == 0;
+        if(dy < 0)
+            return (getFlags(x, y, z) & SOUTH_WALL) == 0;
+        if(dy > 0)
+            return (getFlags(x, y + 1, z) & SOUTH_WALL) == 0;
+        return true;
+    }
+
+    /**
+     * Constructs a new {@link CollisionMap};
+     * @param buffer The mapped collision file or null if there is none.
+     */
+    CollisionMap(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+}
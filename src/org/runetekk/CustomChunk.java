@@ -12,6 +12,37 @@ public final class CustomChunk extends Chunk {
      */
     int[] chunkHashes;
     
+    /**
+     * The chunk hashes are shared with a template and have to be copied
+     * before they are written to.
+     */
+    boolean isShared;
+    
+    /**
+     * Sets the hash for a chunk plane, copying the hashes first if they
+     * are shared with a template. This does not drop the cached constructed
+     * map payloads, use {@link InstancePool#setChunkHash} for chunks that
+     * are in the world.
+     * @param plane The plane of the hash to set.
+     * @param hash The chunk hash.
+     */
+    void setChunkHash(int plane, int hash) {
+        if(isShared) {
+            chunkHashes = chunkHashes.clone();
+            isShared = false;
+        }
+        chunkHashes[plane] = hash;
+    }
+    
+    /**
+     * Constructs a new {@link CustomChunk};
+     * @param chunkHashes The template chunk hashes, which will be shared until written to.
+     */
+    CustomChunk(int[] chunkHashes) {
+        this.chunkHashes = chunkHashes;
+        isShared = true;
+    }
+    
     /**
      * Constructs a new {@link CustomChunk};
      */
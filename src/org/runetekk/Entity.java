@@ -51,37 +51,35 @@ public class Entity extends ListNode {
         boolean updateRegion = cHash != cUpdatedHash;
         if(updateRegion || cHash != cUpdatedHash) {
             removeFromList();  
-            Region region = null;       
             Chunk chunk = null;
-            if(Main.regions != null && Main.regions[coordX >> 6] != null && (region = Main.regions[coordX >> 6][coordY >> 6]) != null) {
-                if(region.chunks != null && region.chunks[(coordX >> 3) - ((coordX >> 6) << 3)] != null &&
-                                   (chunk = region.chunks[(coordX >> 3) - ((coordX >> 6) << 3)]
-                                                     [(coordY >> 3) - ((coordY >> 6) << 3)]) != null) {
-                    ListNode list = null;
-                    if(updateRegion && this instanceof Client) {
-                        list = chunk.activePlayers;
-                        if(!((Client) this).isLowMemory && region.songId != -1) {
-                            int songId = region.songId;
-                            Client client = (Client) this;
-                            Client.sendMusic(client, songId);
-                            if(Main.musicNames.length - 1 >= songId && Main.musicNames[songId] != null) {
-                                if((client.activeMusic[songId >> 3] & (1 << (songId & 7))) == 0) {
-                                    Client.sendMessage(client, "@red@You have unlocked the music track: " + Main.musicNames[region.songId] + ".");
-                                    client.activeMusic[songId >> 3] |= 1 << (songId & 7);
-                                }
+            if(Main.chunkTable != null && (chunk = Main.chunkTable.get(coordX >> 3, coordY >> 3)) != null) {
+                ListNode list = null;
+                if(updateRegion && this instanceof Client) {
+                    list = chunk.activePlayers;
+                    Region region = chunk.region;
+                    if(!((Client) this).isLowMemory && region.songId != -1) {
+                        int songId = region.songId;
+                        Client client = (Client) this;
+                        Client.sendMusic(client, songId);
+                        if(Main.musicNames.length - 1 >= songId && Main.musicNames[songId] != null) {
+                            if((client.activeMusic[songId >> 3] & (1 << (songId & 7))) == 0) {
+                                Client.sendMessage(client, "@red@You have unlocked the music track: " + Main.musicNames[region.songId] + ".");
+                                client.activeMusic[songId >> 3] |= 1 << (songId & 7);
+                                client.journal.putMusic(songId);
                             }
                         }
-                    } else if(this instanceof GroundItem) {
-                        list = chunk.activeItems;
                     }
-                    parentNode = list.parentNode;
-                    childNode = list;
-                    parentNode.childNode = this;
-                    childNode.parentNode = this;   
-                    rUpdatedHash = rHash;
-                    cUpdatedHash = cHash;
-                    return;
+                } else if(this instanceof GroundItem) {
+                    list = chunk.activeItems;
+                    chunk.updateItemVersion();
                 }
+                parentNode = list.parentNode;
+                childNode = list;
+                parentNode.childNode = this;
+                childNode.parentNode = this;   
+                rUpdatedHash = rHash;
+                cUpdatedHash = cHash;
+                return;
             }
             throw new RuntimeException("eek");
         }   
@@ -16,7 +16,13 @@ public final class GroundItem extends Entity {
      * The local id of the client who spawned this item.
      */
     int creatorId;
-    
+
+    /**
+     * The base 37 encoded name of the player who spawned this item, kept so
+     * that the owner of the item survives a restart.
+     */
+    long ownerName;
+
     /**
      * The item id of this ground item.
      */
@@ -44,9 +50,9 @@ public final class GroundItem extends Entity {
     long destroyTime;
     
     /**
-     * The current update number.
+     * The item has appeared to people who aren't the owner of this item.
      */
-    int currentUpdate;
+    boolean isPublic;
     
     /**
      * Flag to remove the item from the client.
@@ -57,6 +63,14 @@ public final class GroundItem extends Entity {
      * Destroys this {@link GroundItem}.
      */
     public void destroy() {
+        if(!remove) {
+            if(isPublic)
+                Main.queueItemUpdate(this, true);
+            Main.itemSlots.release(localId);
+            Chunk chunk = Main.chunkTable.get(coordX >> 3, coordY >> 3);
+            if(chunk != null)
+                chunk.updateItemVersion();
+        }
         if(referenceNode != null)
             referenceNode.removeFromList();
         removeFromList();
@@ -0,0 +1,24 @@
+package org.runetekk;
+
+/**
+ * GroundItemNode.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class GroundItemNode extends ListNode {
+    
+    /**
+     * The ground item that was sent to the client. The item is kept after it
+     * is destroyed so that its removal can still be sent once its slot is
+     * reused.
+     */
+    GroundItem groundItem;
+    
+    /**
+     * Constructs a new {@link GroundItemNode};
+     * @param groundItem The ground item that was sent to the client.
+     */
+    GroundItemNode(GroundItem groundItem) {
+        this.groundItem = groundItem;
+    }
+}
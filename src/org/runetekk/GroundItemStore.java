@@ -0,0 +1,50 @@
+package org.runetekk;
+
+/**
+ * GroundItemStore.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class GroundItemStore {
+
+    /**
+     * The amount of ground items in a segment.
+     */
+    public static final int SEGMENT_SIZE = 1024;
+
+    /**
+     * The segments of ground items, null until an item is first put into
+     * the segment.
+     */
+    private GroundItem[][] segments;
+
+    /**
+     * Gets the ground item in a slot.
+     * @param slot The slot.
+     * @return The ground item or null if the slot was never used.
+     */
+    GroundItem get(int slot) {
+        GroundItem[] segment = segments[slot / SEGMENT_SIZE];
+        return segment != null ? segment[slot % SEGMENT_SIZE] : null;
+    }
+
+    /**
+     * Puts a ground item into a slot.
+     * @param slot The slot.
+     * @param groundItem The ground item.
+     */
+    void put(int slot, GroundItem groundItem) {
+        GroundItem[] segment = segments[slot / SEGMENT_SIZE];
+        if(segment == null)
+            segment = segments[slot / SEGMENT_SIZE] = new GroundItem[SEGMENT_SIZE];
+        segment[slot % SEGMENT_SIZE] = groundItem;
+    }
+
+    /**
+     * Constructs a new {@link GroundItemStore};
+     * @param capacity The maximum amount of ground items.
+     */
+    GroundItemStore(int capacity) {
+        segments = new GroundItem[(capacity + SEGMENT_SIZE - 1) / SEGMENT_SIZE][];
+    }
+}
@@ -6,50 +6,189 @@ package org.runetekk;
  * @author RuneTekk Development (SiniSoul)
  */
 public final class HashTable  {
-    
+
+    /**
+     * The default fraction of the slots that may be used before the table
+     * is grown.
+     */
+    public static final float DEFAULT_LOAD_FACTOR = 0.5F;
+
+    /**
+     * The keys of this hash table, a key is only valid if its value is
+     * not null.
+     */
+    long[] keys;
+
+    /**
+     * The values of this hash table, null for an empty slot.
+     */
+    Object[] values;
+
+    /**
+     * The amount of values in this hash table.
+     */
+    int size;
+
     /**
-     * The nodes of this hash map.
+     * The fraction of the slots that may be used before the table is grown.
      */
-    ListNode[] nodes;
-    
+    private float loadFactor;
+
+    /**
+     * The amount of values at which the table is grown.
+     */
+    private int threshold;
+
     /**
-     * Registers a node on this {@link HashTable}.
-     * @param listNode The {@link ListNode} to store.
-     * @param currentKey The key that the node will be stored at.
+     * Gets the slot that a key is first looked up at.
+     * @param key The key.
+     * @param mask The amount of slots minus one.
+     * @return The slot.
      */
-    public void put(ListNode listNode, long key) {
-        ListNode bucket = nodes[(int) (key & (long) (nodes.length - 1))];
-        listNode.parentNode = bucket;
-        listNode.childNode = bucket.childNode;
-        listNode.childNode.parentNode = listNode;
-        listNode.parentNode.childNode = listNode;
-        listNode.currentKey = key;
+    static int getSlot(long key, int mask) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ key >>> 32) & mask;
     }
-    
+
     /**
-     * Gets the {@link ListNode} at the specific hash key.
-     * @param key The hash key of the node to get.
-     * @return The node.
+     * Puts a value into this {@link HashTable}, replacing the value that was
+     * stored at the key.
+     * @param key The key that the value will be stored at.
+     * @param value The value to store, may not be null.
      */
-    public ListNode get(long key) {
-        ListNode bucket = nodes[(int) (key & (long) (nodes.length - 1))];
-        for(ListNode node = bucket.parentNode; node != bucket; node = node.parentNode) {
-            if(node.currentKey == key)
-                return node;
+    public void put(long key, Object value) {
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if(++size > threshold)
+            resize(keys.length << 1);
+    }
+
+    /**
+     * Gets the value at the specific hash key.
+     * @param key The hash key of the value to get.
+     * @return The value or null if there is no value at the key.
+     */
+    public Object get(long key) {
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        Object value;
+        while((value = values[slot]) != null) {
+            if(keys[slot] == key)
+                return value;
+            slot = (slot + 1) & mask;
         }
         return null;
     }
-    
+
     /**
-     * Constructs a new {@link HashTable};
-     * @param size The size of the map.
-     */
-    HashTable(int size) {      
-        nodes = new ListNode[size];
-        for(int i = 0; i < size; i++) {
-            ListNode node = nodes[i] = new ListNode();
-            node.childNode = node;
-            node.parentNode = node;
+     * Removes the value at the specific hash key. The values after it in the
+     * same run are shifted back so that lookups never need to skip over
+     * removed slots.
+     * @param key The hash key of the value to remove.
+     * @return The removed value or null if there was no value at the key.
+     */
+    public Object remove(long key) {
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        Object value;
+        while((value = values[slot]) != null) {
+            if(keys[slot] == key)
+                break;
+            slot = (slot + 1) & mask;
         }
-    }  
+        if(value == null)
+            return null;
+        int next = slot;
+        for(;;) {
+            next = (next + 1) & mask;
+            if(values[next] == null)
+                break;
+            int home = getSlot(keys[next], mask);
+            if(((next - home) & mask) < ((next - slot) & mask))
+                continue;
+            keys[slot] = keys[next];
+            values[slot] = values[next];
+            slot = next;
+        }
+        values[slot] = null;
+        size--;
+        return value;
+    }
+
+    /**
+     * Removes every value from this {@link HashTable}.
+     */
+    public void clear() {
+        for(int i = 0; i < values.length; i++)
+            values[i] = null;
+        size = 0;
+    }
+
+    /**
+     * Moves the values of this table into a new amount of slots.
+     * @param capacity The new amount of slots, a power of two.
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * loadFactor);
+        int mask = capacity - 1;
+        for(int i = 0; i < oldValues.length; i++) {
+            if(oldValues[i] == null)
+                continue;
+            int slot = getSlot(oldKeys[i], mask);
+            while(values[slot] != null)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Gets the amount of slots needed to hold an amount of values.
+     * @param size The amount of values.
+     * @param loadFactor The fraction of the slots that may be used.
+     * @return The amount of slots, a power of two.
+     */
+    static int getCapacity(int size, float loadFactor) {
+        int capacity = 2;
+        while(capacity * loadFactor < size)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Constructs a new {@link HashTable};
+     * @param size The amount of values expected in the table.
+     */
+    HashTable(int size) {
+        this(size, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs a new {@link HashTable};
+     * @param size The amount of values expected in the table.
+     * @param loadFactor The fraction of the slots that may be used before
+     *                   the table is grown, between zero and one.
+     */
+    HashTable(int size, float loadFactor) {
+        if(loadFactor <= 0F || loadFactor >= 1F)
+            throw new RuntimeException("Invalid load factor " + loadFactor);
+        this.loadFactor = loadFactor;
+        int capacity = getCapacity(size, loadFactor);
+        keys = new long[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * loadFactor);
+    }
 }
@@ -0,0 +1,56 @@
+package org.runetekk;
+
+/**
+ * IndexList.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class IndexList {
+
+    /**
+     * The indexes in this list.
+     */
+    int[] values;
+
+    /**
+     * The amount of indexes currently in this list.
+     */
+    int size;
+
+    /**
+     * Adds an index to the end of this list.
+     * @param value The index to add.
+     */
+    void add(int value) {
+        if(size >= values.length) {
+            int[] oldValues = values;
+            values = new int[oldValues.length << 1];
+            System.arraycopy(oldValues, 0, values, 0, size);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Removes the index at a position in this list by moving the last index
+     * in the list into its place. The order of the list is not kept.
+     * @param position The position of the index to remove.
+     */
+    void remove(int position) {
+        values[position] = values[--size];
+    }
+
+    /**
+     * Clears this list.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Constructs a new {@link IndexList};
+     * @param capacity The initial capacity of the list.
+     */
+    IndexList(int capacity) {
+        values = new int[capacity < 1 ? 1 : capacity];
+    }
+}
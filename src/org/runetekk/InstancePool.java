@@ -0,0 +1,260 @@
+package org.runetekk;
+
+/**
+ * InstancePool.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class InstancePool {
+
+    /**
+     * The width and height of an instance area in chunks.
+     */
+    public static final int AREA_SIZE = 8;
+
+    /**
+     * The distance in chunks between the origins of two neighbouring areas. The
+     * gap between areas is wider than the six chunks that a client can see
+     * past its own chunk, so no instance can see into another.
+     */
+    public static final int AREA_STRIDE = 16;
+
+    /**
+     * The chunk x coordinate of the first area in the pool.
+     */
+    public static final int FIRST_AREA_X = 48;
+
+    /**
+     * The chunk y coordinate of the first area in the pool.
+     */
+    public static final int FIRST_AREA_Y = 48;
+
+    /**
+     * The amount of area columns in the pool.
+     */
+    public static final int AREA_COLUMNS = 11;
+
+    /**
+     * The amount of area rows in the pool.
+     */
+    public static final int AREA_ROWS = 64;
+
+    /**
+     * The maximum amount of instances that can be allocated at once.
+     */
+    public static final int MAXIMUM_AREAS = AREA_COLUMNS * AREA_ROWS;
+
+    /**
+     * The amount of time in milliseconds an instance has to be empty for
+     * before it is recycled.
+     */
+    private static final long IDLE_TIME = 10000L;
+
+    /**
+     * The hashes used for the chunks of a template that have no source chunk.
+     */
+    private static final int[] EMPTY_HASHES = new int[4];
+
+    /**
+     * The stack of areas that are free to be allocated.
+     */
+    private int[] freeAreas;
+
+    /**
+     * The amount of areas on the free stack.
+     */
+    private int amountFree;
+
+    /**
+     * The areas that are currently allocated.
+     */
+    private IndexList activeAreas;
+
+    /**
+     * The time that each allocated area was first found empty, or -1 if
+     * it has players in it.
+     */
+    private long[] idleTimes;
+
+    /**
+     * The {@link Region} that every instance chunk is located in.
+     */
+    private Region region;
+
+    /**
+     * Creates a template from a map region. The hashes of each chunk in
+     * the template refer to the chunk at the same position in the region.
+     * @param regionX The x coordinate of the source region.
+     * @param regionY The y coordinate of the source region.
+     * @return The created template.
+     */
+    static int[][] createTemplate(int regionX, int regionY) {
+        int[][] template = new int[AREA_SIZE * AREA_SIZE][];
+        for(int x = 0; x < AREA_SIZE; x++) {
+            for(int y = 0; y < AREA_SIZE; y++) {
+                int chunkX = regionX << 3 | x;
+                int chunkY = regionY << 3 | y;
+                if(Main.chunkTable.get(chunkX, chunkY) == null)
+                    continue;
+                int[] hashes = template[x * AREA_SIZE + y] = new int[4];
+                for(int z = 0; z < 4; z++)
+                    hashes[z] = 1 | z << 24 | chunkX << 14 | chunkY << 3;
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Checks if a chunk is located in the area of the pool.
+     * @param chunkX The chunk x coordinate.
+     * @param chunkY The chunk y coordinate.
+     * @return If the chunk is in the area of the pool.
+     */
+    static boolean isPooled(int chunkX, int chunkY) {
+        return chunkX >= FIRST_AREA_X && chunkX < FIRST_AREA_X + AREA_COLUMNS * AREA_STRIDE &&
+               chunkY >= FIRST_AREA_Y && chunkY < FIRST_AREA_Y + AREA_ROWS * AREA_STRIDE;
+    }
+
+    /**
+     * Gets the chunk x coordinate of the origin of an area.
+     * @param area The area.
+     * @return The chunk x coordinate.
+     */
+    static int getChunkX(int area) {
+        return FIRST_AREA_X + (area / AREA_ROWS) * AREA_STRIDE;
+    }
+
+    /**
+     * Gets the chunk y coordinate of the origin of an area.
+     * @param area The area.
+     * @return The chunk y coordinate.
+     */
+    static int getChunkY(int area) {
+        return FIRST_AREA_Y + (area % AREA_ROWS) * AREA_STRIDE;
+    }
+
+    /**
+     * Allocates a new instance from the pool. The chunks of the instance
+     * share the hashes of the template until they are changed.
+     * @param template The template of the instance.
+     * @return The allocated area or -1 if the pool is exhausted.
+     */
+    int allocate(int[][] template) {
+        if(amountFree < 1)
+            return -1;
+        int area = freeAreas[--amountFree];
+        int originX = getChunkX(area);
+        int originY = getChunkY(area);
+        for(int x = 0; x < AREA_SIZE; x++) {
+            for(int y = 0; y < AREA_SIZE; y++) {
+                int[] hashes = template[x * AREA_SIZE + y];
+                Chunk chunk = new CustomChunk(hashes != null ? hashes : EMPTY_HASHES);
+                chunk.region = region;
+                Main.chunkTable.put(originX + x, originY + y, chunk);
+            }
+        }
+        Client.invalidateChunkPayloads(originX, originY, originX + AREA_SIZE - 1, originY + AREA_SIZE - 1);
+        idleTimes[area] = -1L;
+        activeAreas.add(area);
+        return area;
+    }
+
+    /**
+     * Releases an instance back into the pool, destroying every ground item
+     * that is left in it.
+     * @param area The area to release.
+     */
+    void release(int area) {
+        for(int i = 0; i < activeAreas.size; i++) {
+            if(activeAreas.values[i] == area) {
+                activeAreas.remove(i);
+                break;
+            }
+        }
+        int originX = getChunkX(area);
+        int originY = getChunkY(area);
+        for(int x = 0; x < AREA_SIZE; x++) {
+            for(int y = 0; y < AREA_SIZE; y++) {
+                Chunk chunk = Main.chunkTable.get(originX + x, originY + y);
+                if(chunk == null)
+                    continue;
+                ListNode node = chunk.activeItems;
+                while((node = node.childNode) != null) {
+                    if(!(node instanceof GroundItem))
+                        break;
+                    ((GroundItem) node).destroy();
+                    node = chunk.activeItems;
+                }
+                Main.chunkTable.put(originX + x, originY + y, null);
+            }
+        }
+        Client.invalidateChunkPayloads(originX, originY, originX + AREA_SIZE - 1, originY + AREA_SIZE - 1);
+        freeAreas[amountFree++] = area;
+    }
+
+    /**
+     * Sets the hash of a custom chunk plane and drops the cached constructed
+     * map payloads that contain the chunk.
+     * @param chunkX The chunk x coordinate.
+     * @param chunkY The chunk y coordinate.
+     * @param plane The plane of the hash to set.
+     * @param hash The chunk hash.
+     */
+    void setChunkHash(int chunkX, int chunkY, int plane, int hash) {
+        Chunk chunk = Main.chunkTable.get(chunkX, chunkY);
+        if(!(chunk instanceof CustomChunk))
+            throw new RuntimeException("Not a custom chunk - " + chunkX + ", " + chunkY);
+        ((CustomChunk) chunk).setChunkHash(plane, hash);
+        Client.invalidateChunkPayloads(chunkX, chunkY, chunkX, chunkY);
+    }
+
+    /**
+     * Checks if there are no players in an area.
+     * @param area The area to check.
+     * @return If the area is empty.
+     */
+    boolean isEmpty(int area) {
+        int originX = getChunkX(area);
+        int originY = getChunkY(area);
+        for(int x = 0; x < AREA_SIZE; x++) {
+            for(int y = 0; y < AREA_SIZE; y++) {
+                Chunk chunk = Main.chunkTable.get(originX + x, originY + y);
+                if(chunk != null && chunk.activePlayers.childNode != chunk.activePlayers)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recycles every allocated instance that has been empty for long enough.
+     * @param time The current time in milliseconds.
+     */
+    void sweep(long time) {
+        for(int i = 0; i < activeAreas.size;) {
+            int area = activeAreas.values[i];
+            if(!isEmpty(area)) {
+                idleTimes[area] = -1L;
+            } else if(idleTimes[area] < 0L) {
+                idleTimes[area] = time;
+            } else if(idleTimes[area] + IDLE_TIME < time) {
+                release(area);
+                continue;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Constructs a new {@link InstancePool};
+     */
+    InstancePool() {
+        freeAreas = new int[MAXIMUM_AREAS];
+        for(int i = 0; i < MAXIMUM_AREAS; i++)
+            freeAreas[i] = MAXIMUM_AREAS - 1 - i;
+        amountFree = MAXIMUM_AREAS;
+        activeAreas = new IndexList(16);
+        idleTimes = new long[MAXIMUM_AREAS];
+        region = new Region();
+    }
+}
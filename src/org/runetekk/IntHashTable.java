@@ -0,0 +1,175 @@
+package org.runetekk;
+
+/**
+ * IntHashTable.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class IntHashTable {
+
+    /**
+     * The key that marks an empty slot, it cannot be stored in the table.
+     */
+    public static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    /**
+     * The keys of this hash table, {@link #EMPTY_KEY} for an empty slot.
+     */
+    long[] keys;
+
+    /**
+     * The values of this hash table.
+     */
+    int[] values;
+
+    /**
+     * The amount of values in this hash table.
+     */
+    int size;
+
+    /**
+     * The fraction of the slots that may be used before the table is grown.
+     */
+    private float loadFactor;
+
+    /**
+     * The amount of values at which the table is grown.
+     */
+    private int threshold;
+
+    /**
+     * Puts a value into this {@link IntHashTable}, replacing the value that
+     * was stored at the key.
+     * @param key The key that the value will be stored at.
+     * @param value The value to store.
+     */
+    public void put(long key, int value) {
+        if(key == EMPTY_KEY)
+            throw new RuntimeException("Invalid key");
+        int mask = keys.length - 1;
+        int slot = HashTable.getSlot(key, mask);
+        long current;
+        while((current = keys[slot]) != EMPTY_KEY) {
+            if(current == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if(++size > threshold)
+            resize(keys.length << 1);
+    }
+
+    /**
+     * Gets the value at the specific hash key.
+     * @param key The hash key of the value to get.
+     * @param defaultValue The value to return if there is no value at the key.
+     * @return The value.
+     */
+    public int get(long key, int defaultValue) {
+        int mask = keys.length - 1;
+        int slot = HashTable.getSlot(key, mask);
+        long current;
+        while((current = keys[slot]) != EMPTY_KEY) {
+            if(current == key)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Removes the value at the specific hash key, the same way as
+     * {@link HashTable#remove(long)}.
+     * @param key The hash key of the value to remove.
+     * @return If there was a value at the key.
+     */
+    public boolean remove(long key) {
+        int mask = keys.length - 1;
+        int slot = HashTable.getSlot(key, mask);
+        long current;
+        while((current = keys[slot]) != EMPTY_KEY) {
+            if(current == key)
+                break;
+            slot = (slot + 1) & mask;
+        }
+        if(current == EMPTY_KEY)
+            return false;
+        int next = slot;
+        for(;;) {
+            next = (next + 1) & mask;
+            if(keys[next] == EMPTY_KEY)
+                break;
+            int home = HashTable.getSlot(keys[next], mask);
+            if(((next - home) & mask) < ((next - slot) & mask))
+                continue;
+            keys[slot] = keys[next];
+            values[slot] = values[next];
+            slot = next;
+        }
+        keys[slot] = EMPTY_KEY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Removes every value from this {@link IntHashTable}.
+     */
+    public void clear() {
+        for(int i = 0; i < keys.length; i++)
+            keys[i] = EMPTY_KEY;
+        size = 0;
+    }
+
+    /**
+     * Moves the values of this table into a new amount of slots.
+     * @param capacity The new amount of slots, a power of two.
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        for(int i = 0; i < capacity; i++)
+            keys[i] = EMPTY_KEY;
+        threshold = (int) (capacity * loadFactor);
+        int mask = capacity - 1;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] == EMPTY_KEY)
+                continue;
+            int slot = HashTable.getSlot(oldKeys[i], mask);
+            while(keys[slot] != EMPTY_KEY)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Constructs a new {@link IntHashTable};
+     * @param size The amount of values expected in the table.
+     */
+    IntHashTable(int size) {
+        this(size, HashTable.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs a new {@link IntHashTable};
+     * @param size The amount of values expected in the table.
+     * @param loadFactor The fraction of the slots that may be used before
+     *                   the table is grown, between zero and one.
+     */
+    IntHashTable(int size, float loadFactor) {
+        if(loadFactor <= 0F || loadFactor >= 1F)
+            throw new RuntimeException("Invalid load factor " + loadFactor);
+        this.loadFactor = loadFactor;
+        int capacity = HashTable.getCapacity(size, loadFactor);
+        keys = new long[capacity];
+        values = new int[capacity];
+        for(int i = 0; i < capacity; i++)
+            keys[i] = EMPTY_KEY;
+        threshold = (int) (capacity * loadFactor);
+    }
+}
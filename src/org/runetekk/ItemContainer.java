@@ -0,0 +1,270 @@
+package org.runetekk;
+
+/**
+ * ItemContainer.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class ItemContainer {
+
+    /**
+     * The id of the widget that displays this container.
+     */
+    int widgetId;
+
+    /**
+     * The id of a second widget that displays this container while an
+     * interface is open, -1 if there is none.
+     */
+    int sideWidgetId;
+
+    /**
+     * Every item stacks into a single slot in this container.
+     */
+    boolean isStacking;
+
+    /**
+     * The slot of each item id in this container, null if the container is
+     * searched slot by slot. Only kept for stacking containers as every
+     * item id is then in at most one slot.
+     */
+    IntHashTable slotIndex;
+
+    /**
+     * The container was sent whole to the client at least once.
+     */
+    boolean isSent;
+
+    /**
+     * The journal that the changes to this container are appended to, null
+     * if the changes are not journaled.
+     */
+    StateJournal journal;
+
+    /**
+     * The item id in each slot, -1 if the slot is empty.
+     */
+    int[] ids;
+
+    /**
+     * The item amount in each slot.
+     */
+    int[] amounts;
+
+    /**
+     * A bit for each slot that changed since the container was last sent.
+     */
+    long[] dirtySlots;
+
+    /**
+     * The amount of slots that changed since the container was last sent.
+     */
+    int amountDirty;
+
+    /**
+     * The widget ids of the containers of the owner that have changed, this
+     * container adds its widget id once when its first slot changes.
+     */
+    private IndexList updatedWidgets;
+
+    /**
+     * Sets the item in a slot.
+     * @param slot The slot.
+     * @param id The item id, -1 to empty the slot.
+     * @param amount The item amount.
+     */
+    void set(int slot, int id, int amount) {
+        if(slotIndex != null) {
+            int oldId = ids[slot];
+            if(oldId >= 0 && oldId != id && slotIndex.get(oldId, -1) == slot)
+                slotIndex.remove(oldId);
+            if(id >= 0)
+                slotIndex.put(id, slot);
+        }
+        ids[slot] = id;
+        amounts[slot] = id < 0 ? 0 : amount;
+        if(journal != null)
+            journal.putItem(widgetId, slot, id, amounts[slot]);
+        markSlot(slot);
+    }
+
+    /**
+     * Empties a slot.
+     * @param slot The slot.
+     */
+    void clear(int slot) {
+        set(slot, -1, 0);
+    }
+
+    /**
+     * Finds the slot of an item.
+     * @param id The item id.
+     * @return The slot or -1 if the item is not in this container.
+     */
+    int indexOf(int id) {
+        if(slotIndex != null)
+            return slotIndex.get(id, -1);
+        for(int i = 0; i < ids.length; i++) {
+            if(ids[i] == id)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first empty slot.
+     * @return The slot or -1 if this container is full.
+     */
+    int freeSlot() {
+        for(int i = 0; i < ids.length; i++) {
+            if(ids[i] < 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds an amount of an item to this container. A stackable item is added
+     * to the slot that already holds it, otherwise it takes one empty slot.
+     * @param id The item id.
+     * @param amount The amount to add.
+     * @return The slot or -1 if the item did not fit.
+     */
+    int add(int id, int amount) {
+        if(isStacking || Main.itemDefinitions.isStackable(id)) {
+            int slot = indexOf(id);
+            if(slot >= 0) {
+                if((long) amounts[slot] + amount > Integer.MAX_VALUE)
+                    return -1;
+                set(slot, id, amounts[slot] + amount);
+                return slot;
+            }
+        }
+        int slot = freeSlot();
+        if(slot >= 0)
+            set(slot, id, amount);
+        return slot;
+    }
+
+    /**
+     * Removes an amount of the item in a slot, emptying the slot once none
+     * of the item is left.
+     * @param slot The slot.
+     * @param amount The amount to remove, at most the amount in the slot.
+     */
+    void remove(int slot, int amount) {
+        if(amount >= amounts[slot])
+            clear(slot);
+        else
+            set(slot, ids[slot], amounts[slot] - amount);
+    }
+
+    /**
+     * Moves every item towards the first slot so that there are no empty
+     * slots between items. Only the slots that changed are marked.
+     */
+    void compact() {
+        int writeSlot = 0;
+        for(int readSlot = 0; readSlot < ids.length; readSlot++) {
+            if(ids[readSlot] < 0)
+                continue;
+            if(readSlot != writeSlot) {
+                set(writeSlot, ids[readSlot], amounts[readSlot]);
+                clear(readSlot);
+            }
+            writeSlot++;
+        }
+    }
+
+    /**
+     * Swaps the items in two slots. The client swaps them itself before it
+     * tells the server, the slots are still marked so that a client that
+     * did not is corrected.
+     * @param firstSlot The first slot.
+     * @param secondSlot The second slot.
+     */
+    void swap(int firstSlot, int secondSlot) {
+        if(slotIndex != null) {
+            if(ids[firstSlot] >= 0)
+                slotIndex.put(ids[firstSlot], secondSlot);
+            if(ids[secondSlot] >= 0)
+                slotIndex.put(ids[secondSlot], firstSlot);
+        }
+        int id = ids[firstSlot];
+        int amount = amounts[firstSlot];
+        ids[firstSlot] = ids[secondSlot];
+        amounts[firstSlot] = amounts[secondSlot];
+        ids[secondSlot] = id;
+        amounts[secondSlot] = amount;
+        if(journal != null) {
+            journal.putItem(widgetId, firstSlot, ids[firstSlot], amounts[firstSlot]);
+            journal.putItem(widgetId, secondSlot, id, amount);
+        }
+        markSlot(firstSlot);
+        markSlot(secondSlot);
+    }
+
+    /**
+     * Moves the item in a slot to another slot and shifts every item in
+     * between one slot towards the slot that was left, the way the bank
+     * inserts items.
+     * @param fromSlot The slot of the item to move.
+     * @param toSlot The slot to move the item to.
+     */
+    void insert(int fromSlot, int toSlot) {
+        int id = ids[fromSlot];
+        int amount = amounts[fromSlot];
+        int step = fromSlot < toSlot ? 1 : -1;
+        for(int slot = fromSlot; slot != toSlot; slot += step)
+            set(slot, ids[slot + step], amounts[slot + step]);
+        set(toSlot, id, amount);
+    }
+
+    /**
+     * Marks a slot as changed.
+     * @param slot The slot.
+     */
+    void markSlot(int slot) {
+        long mask = 1L << (slot & 63);
+        if((dirtySlots[slot >> 6] & mask) != 0)
+            return;
+        dirtySlots[slot >> 6] |= mask;
+        if(amountDirty++ == 0)
+            updatedWidgets.add(widgetId);
+    }
+
+    /**
+     * Marks every slot as changed.
+     */
+    void markAll() {
+        for(int i = 0; i < ids.length; i++)
+            markSlot(i);
+    }
+
+    /**
+     * Clears the changed slots once they have been sent.
+     */
+    void clearDirty() {
+        for(int i = 0; i < dirtySlots.length; i++)
+            dirtySlots[i] = 0L;
+        amountDirty = 0;
+    }
+
+    /**
+     * Constructs a new {@link ItemContainer}; Every slot starts empty and
+     * the container does not stack every item.
+     * @param widgetId The id of the widget that displays the container.
+     * @param capacity The amount of slots.
+     * @param updatedWidgets The list of changed containers of the owner.
+     */
+    ItemContainer(int widgetId, int capacity, IndexList updatedWidgets) {
+        this.widgetId = widgetId;
+        sideWidgetId = -1;
+        this.updatedWidgets = updatedWidgets;
+        ids = new int[capacity];
+        amounts = new int[capacity];
+        dirtySlots = new long[(capacity + 63) >> 6];
+        for(int i = 0; i < capacity; i++)
+            ids[i] = -1;
+    }
+}
@@ -0,0 +1,238 @@
+package org.runetekk;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * ItemDefinitions.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class ItemDefinitions {
+
+    /**
+     * The flag for an item that stacks into a single slot.
+     */
+    public static final int STACKABLE = 1;
+
+    /**
+     * The flag for an item that is only for members.
+     */
+    public static final int MEMBERS = 2;
+
+    /**
+     * The flag for an item that is the noted form of another item.
+     */
+    public static final int NOTED = 4;
+
+    /**
+     * The amount of item definitions.
+     */
+    int amountItems;
+
+    /**
+     * The flags of each item.
+     */
+    byte[] flags;
+
+    /**
+     * The id of the other form of each item, the noted form of an unnoted
+     * item and the unnoted form of a noted item, -1 if there is none.
+     */
+    int[] noteIds;
+
+    /**
+     * The value of each item.
+     */
+    int[] values;
+
+    /**
+     * The offset of the name of each item in the name pool, the name of an
+     * item ends where the name of the next item starts.
+     */
+    int[] nameOffsets;
+
+    /**
+     * The characters of every item name.
+     */
+    char[] namePool;
+
+    /**
+     * Checks if an item id has a definition. An empty table accepts every id
+     * that fits a profile so that the stored items are not dropped.
+     * @param id The item id.
+     * @return If the item id is valid.
+     */
+    boolean isValid(int id) {
+        return id >= 0 && (id < amountItems || amountItems == 0 && id < 0xFFFF);
+    }
+
+    /**
+     * Gets the flags of an item, an item without a definition has none.
+     * @param id The item id.
+     * @return The flags.
+     */
+    private int getFlags(int id) {
+        return id >= 0 && id < amountItems ? flags[id] : 0;
+    }
+
+    /**
+     * Checks if an item stacks into a single slot.
+     * @param id The item id.
+     * @return If the item is stackable.
+     */
+    boolean isStackable(int id) {
+        return (getFlags(id) & STACKABLE) != 0;
+    }
+
+    /**
+     * Checks if an item is only for members.
+     * @param id The item id.
+     * @return If the item is for members.
+     */
+    boolean isMembers(int id) {
+        return (getFlags(id) & MEMBERS) != 0;
+    }
+
+    /**
+     * Checks if an item is the noted form of another item.
+     * @param id The item id.
+     * @return If the item is noted.
+     */
+    boolean isNoted(int id) {
+        return (getFlags(id) & NOTED) != 0;
+    }
+
+    /**
+     * Gets the name of an item.
+     * @param id The item id.
+     * @return The name, empty for an item without a definition.
+     */
+    String getName(int id) {
+        if(id < 0 || id >= amountItems)
+            return "";
+        return new String(namePool, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id]);
+    }
+
+    /**
+     * Decodes the item definitions of the config archive and writes them to
+     * the definitions file. The noted form of an item takes its name, value
+     * and members flag from the unnoted form the same way the client does.
+     * @param indexBuffer The buffer of the obj.idx file.
+     * @param buffer The buffer of the obj.dat file.
+     * @param os The stream to write the definitions file to.
+     * @throws IOException If the file could not be written.
+     */
+    static void dump(ByteBuffer indexBuffer, ByteBuffer buffer, DataOutputStream os) throws IOException {
+        int amountItems = indexBuffer.getUword();
+        byte[] flags = new byte[amountItems];
+        int[] noteIds = new int[amountItems];
+        int[] templateIds = new int[amountItems];
+        int[] values = new int[amountItems];
+        String[] names = new String[amountItems];
+        int offset = 2;
+        for(int id = 0; id < amountItems; id++) {
+            buffer.offset = offset;
+            offset += indexBuffer.getUword();
+            noteIds[id] = -1;
+            templateIds[id] = -1;
+            values[id] = 1;
+            for(;;) {
+                int opcode = buffer.getUbyte();
+                if(opcode == 0)
+                    break;
+                if(opcode == 2)
+                    names[id] = buffer.getString();
+                else if(opcode == 3)
+                    buffer.getString();
+                else if(opcode == 11)
+                    flags[id] |= STACKABLE;
+                else if(opcode == 12)
+                    values[id] = buffer.getDword();
+                else if(opcode == 16)
+                    flags[id] |= MEMBERS;
+                else if(opcode == 23 || opcode == 25) {
+                    buffer.getUword();
+                    buffer.getByte();
+                } else if(opcode >= 30 && opcode < 40)
+                    buffer.getString();
+                else if(opcode == 40)
+                    buffer.offset += buffer.getUbyte() * 4;
+                else if(opcode == 97)
+                    noteIds[id] = buffer.getUword();
+                else if(opcode == 98)
+                    templateIds[id] = buffer.getUword();
+                else if(opcode >= 100 && opcode < 110)
+                    buffer.offset += 4;
+                else if(opcode == 113 || opcode == 114 || opcode == 115)
+                    buffer.getByte();
+                else if(opcode == 1 || opcode >= 4 && opcode <= 10 || opcode == 24 || opcode == 26 ||
+                        opcode >= 78 && opcode <= 95 || opcode >= 110 && opcode <= 112)
+                    buffer.getUword();
+            }
+        }
+        for(int id = 0; id < amountItems; id++) {
+            int unnotedId = noteIds[id];
+            if(templateIds[id] < 0 || unnotedId < 0 || unnotedId >= amountItems)
+                continue;
+            flags[id] = (byte) (flags[unnotedId] & MEMBERS | STACKABLE | NOTED);
+            values[id] = values[unnotedId];
+            names[id] = names[unnotedId];
+        }
+        os.writeShort(amountItems);
+        for(int id = 0; id < amountItems; id++) {
+            String name = names[id] == null ? "" : names[id];
+            os.writeByte(flags[id]);
+            os.writeShort(noteIds[id] < 0 ? 0xFFFF : noteIds[id]);
+            os.writeInt(values[id]);
+            os.writeByte(name.length());
+            os.writeBytes(name);
+        }
+    }
+
+    /**
+     * Constructs a new empty {@link ItemDefinitions};
+     */
+    ItemDefinitions() {
+        flags = new byte[0];
+        noteIds = new int[0];
+        values = new int[0];
+        nameOffsets = new int[1];
+        namePool = new char[0];
+    }
+
+    /**
+     * Constructs a new {@link ItemDefinitions};
+     * @param buffer The mapped definitions file.
+     */
+    ItemDefinitions(MappedByteBuffer buffer) {
+        amountItems = buffer.getShort() & 0xFFFF;
+        flags = new byte[amountItems];
+        noteIds = new int[amountItems];
+        values = new int[amountItems];
+        nameOffsets = new int[amountItems + 1];
+        int position = buffer.position();
+        int poolSize = 0;
+        for(int id = 0; id < amountItems; id++) {
+            buffer.position(buffer.position() + 7);
+            int length = buffer.get() & 0xFF;
+            buffer.position(buffer.position() + length);
+            poolSize += length;
+        }
+        buffer.position(position);
+        namePool = new char[poolSize];
+        int poolOffset = 0;
+        for(int id = 0; id < amountItems; id++) {
+            flags[id] = buffer.get();
+            int noteId = buffer.getShort() & 0xFFFF;
+            noteIds[id] = noteId == 0xFFFF ? -1 : noteId;
+            values[id] = buffer.getInt();
+            int length = buffer.get() & 0xFF;
+            nameOffsets[id] = poolOffset;
+            for(int i = 0; i < length; i++)
+                namePool[poolOffset++] = (char) (buffer.get() & 0xFF);
+        }
+        nameOffsets[amountItems] = poolOffset;
+    }
+}
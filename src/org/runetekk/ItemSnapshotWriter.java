@@ -0,0 +1,126 @@
+package org.runetekk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ItemSnapshotWriter.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class ItemSnapshotWriter implements Runnable {
+
+    /**
+     * The {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ItemSnapshotWriter.class.getName());
+
+    /**
+     * The path of the snapshot file.
+     */
+    private String path;
+
+    /**
+     * The encoded snapshot waiting to be written, null if there is none.
+     * A newer snapshot replaces one that has not been written yet.
+     */
+    private byte[] pendingSnapshot;
+
+    /**
+     * The local thread.
+     */
+    private Thread thread;
+
+    /**
+     * The local thread is currently paused.
+     */
+    private boolean isPaused;
+
+    /**
+     * Initializes the local thread.
+     */
+    private void initialize() {
+        thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an encoded snapshot to be written by the local thread.
+     * @param snapshot The encoded snapshot.
+     */
+    void submit(byte[] snapshot) {
+        synchronized(this) {
+            pendingSnapshot = snapshot;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file which then replaces the
+     * snapshot file, so that a crash while writing never leaves a partly
+     * written snapshot behind.
+     * @param snapshot The encoded snapshot.
+     */
+    private void write(byte[] snapshot) {
+        File file = new File(path + ".tmp");
+        try {
+            FileOutputStream os = new FileOutputStream(file);
+            try {
+                os.write(snapshot);
+                os.getFD().sync();
+            } finally {
+                os.close();
+            }
+            if(!file.renameTo(new File(path)))
+                throw new IOException("Failed to replace " + path);
+        } catch(IOException ex) {
+            LOGGER.log(Level.WARNING, "Exception thrown while writing the item snapshot : {0}", ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        for(;;) {
+            byte[] snapshot;
+            synchronized(this) {
+                while(pendingSnapshot == null && !isPaused) {
+                    try {
+                        wait();
+                    } catch(InterruptedException ex) {}
+                }
+                if(pendingSnapshot == null)
+                    break;
+                snapshot = pendingSnapshot;
+                pendingSnapshot = null;
+            }
+            write(snapshot);
+        }
+    }
+
+    /**
+     * Destroys this {@link ItemSnapshotWriter}. The snapshot that is waiting
+     * to be written is written before the local thread exits.
+     */
+    void destroy() {
+        synchronized(this) {
+            isPaused = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch(InterruptedException ex) {}
+    }
+
+    /**
+     * Constructs a new {@link ItemSnapshotWriter};
+     * @param path The path of the snapshot file.
+     */
+    ItemSnapshotWriter(String path) {
+        this.path = path;
+        initialize();
+    }
+}
@@ -0,0 +1,92 @@
+package org.runetekk;
+
+/**
+ * ItemTimerQueue.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class ItemTimerQueue {
+
+    /**
+     * The times that the timers fire at, ordered as a binary min heap.
+     */
+    private long[] times;
+
+    /**
+     * The ground items of the timers.
+     */
+    private GroundItem[] items;
+
+    /**
+     * The amount of timers in this queue.
+     */
+    int size;
+
+    /**
+     * Adds a timer for a ground item to this queue.
+     * @param groundItem The ground item.
+     * @param time The time in milliseconds that the timer fires at.
+     */
+    void add(GroundItem groundItem, long time) {
+        if(size >= times.length) {
+            long[] oldTimes = times;
+            GroundItem[] oldItems = items;
+            times = new long[oldTimes.length << 1];
+            items = new GroundItem[oldItems.length << 1];
+            System.arraycopy(oldTimes, 0, times, 0, size);
+            System.arraycopy(oldItems, 0, items, 0, size);
+        }
+        int position = size++;
+        while(position > 0) {
+            int parent = (position - 1) >> 1;
+            if(times[parent] <= time)
+                break;
+            times[position] = times[parent];
+            items[position] = items[parent];
+            position = parent;
+        }
+        times[position] = time;
+        items[position] = groundItem;
+    }
+
+    /**
+     * Removes the first timer from this queue if it has fired.
+     * @param time The current time in milliseconds.
+     * @return The ground item of the timer or null if no timer has fired.
+     */
+    GroundItem poll(long time) {
+        if(size < 1 || times[0] > time)
+            return null;
+        GroundItem groundItem = items[0];
+        long lastTime = times[--size];
+        GroundItem lastItem = items[size];
+        items[size] = null;
+        int position = 0;
+        for(;;) {
+            int child = (position << 1) + 1;
+            if(child >= size)
+                break;
+            if(child + 1 < size && times[child + 1] < times[child])
+                child++;
+            if(times[child] >= lastTime)
+                break;
+            times[position] = times[child];
+            items[position] = items[child];
+            position = child;
+        }
+        if(size > 0) {
+            times[position] = lastTime;
+            items[position] = lastItem;
+        }
+        return groundItem;
+    }
+
+    /**
+     * Constructs a new {@link ItemTimerQueue};
+     * @param capacity The initial capacity of the queue.
+     */
+    ItemTimerQueue(int capacity) {
+        times = new long[capacity < 1 ? 1 : capacity];
+        items = new GroundItem[times.length];
+    }
+}
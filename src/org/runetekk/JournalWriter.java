@@ -0,0 +1,424 @@
+package org.runetekk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * JournalWriter.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class JournalWriter implements Runnable {
+
+    /**
+     * The {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(JournalWriter.class.getName());
+
+    /**
+     * The size in bytes after which a new journal segment is started.
+     */
+    public static final int SEGMENT_SIZE = 1 << 22;
+
+    /**
+     * The size of the header of a journal block, the name key, sequence,
+     * length and checksum of the block.
+     */
+    public static final int HEADER_SIZE = 24;
+
+    /**
+     * The prefix of the names of the journal segment files.
+     */
+    public static final String SEGMENT_PREFIX = "journal.";
+
+    /**
+     * The directory that the journal segments are stored in.
+     */
+    private String directory;
+
+    /**
+     * The {@link ProfileService} that the journal is compacted into.
+     */
+    private ProfileService profileService;
+
+    /**
+     * The id of the oldest journal segment that is still on disk.
+     */
+    private int firstSegmentId;
+
+    /**
+     * The id of the journal segment that is currently written to.
+     */
+    private int segmentId;
+
+    /**
+     * The stream of the journal segment that is currently written to.
+     */
+    private FileOutputStream segment;
+
+    /**
+     * The amount of bytes that were written to the current segment.
+     */
+    private int segmentSize;
+
+    /**
+     * The blocks waiting to be written.
+     */
+    private ByteBuffer pendingBlocks;
+
+    /**
+     * The blocks that are currently being written.
+     */
+    private ByteBuffer writingBlocks;
+
+    /**
+     * The offset in the pending blocks at which the last checkpoint was
+     * taken, -1 if there is none.
+     */
+    private int checkpointOffset;
+
+    /**
+     * The sequence of the last block.
+     */
+    private long lastSequence;
+
+    /**
+     * The blocks that were recovered from the journal on startup keyed by
+     * the base 37 encoded name of their player, each block is its sequence,
+     * length and records. The blocks of a player are removed once they are
+     * applied to the player.
+     */
+    private HashTable recoveredBlocks;
+
+    /**
+     * The checksum used for the blocks.
+     */
+    private CRC32 checksum;
+
+    /**
+     * The local thread.
+     */
+    private Thread thread;
+
+    /**
+     * The local thread is currently paused.
+     */
+    private boolean isPaused;
+
+    /**
+     * Initializes the local thread.
+     */
+    private void initialize() {
+        thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the file of a journal segment.
+     * @param id The segment id.
+     * @return The file.
+     */
+    private File getSegment(int id) {
+        return new File(directory, SEGMENT_PREFIX + id);
+    }
+
+    /**
+     * Appends a block to the pending blocks.
+     * @param nameKey The base 37 encoded name of the player.
+     * @param sequence The sequence of the block.
+     * @param payload The records.
+     * @param offset The offset of the records.
+     * @param length The length of the records.
+     */
+    private void append(long nameKey, long sequence, byte[] payload, int offset, int length) {
+        if(pendingBlocks.offset + HEADER_SIZE + length > pendingBlocks.payload.length)
+            pendingBlocks.payload = Arrays.copyOf(pendingBlocks.payload, Math.max(pendingBlocks.payload.length << 1, pendingBlocks.offset + HEADER_SIZE + length));
+        checksum.reset();
+        checksum.update(payload, offset, length);
+        pendingBlocks.putQword(nameKey);
+        pendingBlocks.putQword(sequence);
+        pendingBlocks.putDword(length);
+        pendingBlocks.putDword(checksum.getValue());
+        System.arraycopy(payload, offset, pendingBlocks.payload, pendingBlocks.offset, length);
+        pendingBlocks.offset += length;
+    }
+
+    /**
+     * Queues the records of a player to be written as a block. Only the
+     * records are copied, the buffer can be reused once this returns.
+     * @param nameKey The base 37 encoded name of the player.
+     * @param records The buffer of records.
+     */
+    void submit(long nameKey, ByteBuffer records) {
+        synchronized(this) {
+            append(nameKey, ++lastSequence, records.payload, 0, records.offset);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gets the sequence of the last block, a profile that is encoded now
+     * includes every block up to and including it.
+     * @return The sequence.
+     */
+    long getSequence() {
+        synchronized(this) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Applies the recovered blocks of a player that are newer than their
+     * profile. Only called from the thread that updates the client.
+     * @param client The client whose profile was decoded.
+     * @param sequence The sequence of the last block that the profile
+     *                 includes.
+     */
+    void recover(Client client, long sequence) {
+        byte[] blocks = (byte[]) recoveredBlocks.get(client.nameKey);
+        if(blocks == null)
+            return;
+        recoveredBlocks.remove(client.nameKey);
+        ByteBuffer buffer = new ByteBuffer(blocks);
+        while(buffer.offset < blocks.length) {
+            long blockSequence = buffer.getQword();
+            int length = buffer.getDword();
+            if(blockSequence > sequence)
+                StateJournal.apply(client, blocks, buffer.offset, length);
+            buffer.offset += length;
+        }
+    }
+
+    /**
+     * Takes a checkpoint of the journal. Every profile must have been queued
+     * to be saved beforehand, the segments written before the checkpoint are
+     * then deleted once those profiles are saved and kept if any profile
+     * failed to be saved. The recovered blocks that were not applied yet are
+     * carried over past the checkpoint.
+     */
+    void checkpoint() {
+        synchronized(this) {
+            checkpointOffset = pendingBlocks.offset;
+            long[] keys = recoveredBlocks.keys;
+            Object[] values = recoveredBlocks.values;
+            for(int i = 0; i < values.length; i++) {
+                if(values[i] == null)
+                    continue;
+                byte[] blocks = (byte[]) values[i];
+                ByteBuffer buffer = new ByteBuffer(blocks);
+                while(buffer.offset < blocks.length) {
+                    long sequence = buffer.getQword();
+                    int length = buffer.getDword();
+                    append(keys[i], sequence, blocks, buffer.offset, length);
+                    buffer.offset += length;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Opens a new journal segment.
+     * @throws IOException If the segment could not be opened.
+     */
+    private void openSegment() throws IOException {
+        if(segment != null)
+            segment.close();
+        segment = null;
+        segment = new FileOutputStream(getSegment(++segmentId));
+        segmentSize = 0;
+    }
+
+    /**
+     * Writes blocks to the current segment and syncs it.
+     * @param payload The blocks.
+     * @param offset The offset of the first block.
+     * @param length The length of the blocks.
+     * @throws IOException If the blocks could not be written.
+     */
+    private void write(byte[] payload, int offset, int length) throws IOException {
+        if(length <= 0)
+            return;
+        if(segmentSize >= SEGMENT_SIZE)
+            openSegment();
+        segment.write(payload, offset, length);
+        segment.getFD().sync();
+        segmentSize += length;
+    }
+
+    /**
+     * Deletes every segment that is older than the current segment.
+     */
+    private void deleteSegments() {
+        for(; firstSegmentId < segmentId; firstSegmentId++) {
+            File file = getSegment(firstSegmentId);
+            if(file.exists() && !file.delete())
+                LOGGER.log(Level.WARNING, "Failed to delete journal segment {0}", file);
+        }
+    }
+
+    @Override
+    public void run() {
+        for(;;) {
+            int checkpoint;
+            synchronized(this) {
+                while(pendingBlocks.offset == 0 && checkpointOffset < 0 && !isPaused) {
+                    try {
+                        wait();
+                    } catch(InterruptedException ex) {}
+                }
+                if(pendingBlocks.offset == 0 && checkpointOffset < 0)
+                    break;
+                ByteBuffer blocks = pendingBlocks;
+                pendingBlocks = writingBlocks;
+                writingBlocks = blocks;
+                checkpoint = checkpointOffset;
+                checkpointOffset = -1;
+            }
+            try {
+                if(checkpoint >= 0) {
+                    write(writingBlocks.payload, 0, checkpoint);
+                    openSegment();
+                    if(profileService.flush())
+                        deleteSegments();
+                    else
+                        LOGGER.log(Level.WARNING, "Profiles failed to save, the journal is kept");
+                    write(writingBlocks.payload, checkpoint, writingBlocks.offset - checkpoint);
+                } else
+                    write(writingBlocks.payload, 0, writingBlocks.offset);
+            } catch(IOException ex) {
+                LOGGER.log(Level.WARNING, "Exception thrown while writing the journal : {0}", ex);
+            }
+            writingBlocks.offset = 0;
+        }
+        try {
+            if(segment != null)
+                segment.close();
+        } catch(IOException ex) {}
+    }
+
+    /**
+     * Reads the blocks of every journal segment on disk into the recovered
+     * blocks. A segment is read up to its first incomplete or corrupt block
+     * as that block was being written when the server stopped.
+     * @param ids The ids of the segments in the order that they were written.
+     */
+    private void readSegments(int[] ids) {
+        for(int i = 0; i < ids.length; i++) {
+            File file = getSegment(ids[i]);
+            byte[] payload = new byte[(int) file.length()];
+            try {
+                FileInputStream is = new FileInputStream(file);
+                try {
+                    int offset = 0;
+                    while(offset < payload.length) {
+                        int read = is.read(payload, offset, payload.length - offset);
+                        if(read < 0)
+                            break;
+                        offset += read;
+                    }
+                } finally {
+                    is.close();
+                }
+            } catch(IOException ex) {
+                LOGGER.log(Level.WARNING, "Exception thrown while reading a journal segment : {0}", ex);
+                continue;
+            }
+            ByteBuffer buffer = new ByteBuffer(payload);
+            while(buffer.offset + HEADER_SIZE <= payload.length) {
+                long nameKey = buffer.getQword();
+                long sequence = buffer.getQword();
+                int length = buffer.getDword();
+                long value = buffer.getDword() & 0xFFFFFFFFL;
+                if(length < 0 || length > payload.length - buffer.offset)
+                    break;
+                checksum.reset();
+                checksum.update(payload, buffer.offset, length);
+                if(checksum.getValue() != value)
+                    break;
+                byte[] oldBlocks = (byte[]) recoveredBlocks.get(nameKey);
+                int oldLength = oldBlocks == null ? 0 : oldBlocks.length;
+                byte[] blocks = new byte[oldLength + 12 + length];
+                if(oldBlocks != null)
+                    System.arraycopy(oldBlocks, 0, blocks, 0, oldLength);
+                ByteBuffer block = new ByteBuffer(blocks);
+                block.offset = oldLength;
+                block.putQword(sequence);
+                block.putDword(length);
+                System.arraycopy(payload, buffer.offset, blocks, block.offset, length);
+                recoveredBlocks.put(nameKey, blocks);
+                if(sequence > lastSequence)
+                    lastSequence = sequence;
+                buffer.offset += length;
+            }
+        }
+    }
+
+    /**
+     * Destroys this {@link JournalWriter}. Every block that is waiting to
+     * be written is written before the local thread exits.
+     */
+    void destroy() {
+        synchronized(this) {
+            isPaused = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch(InterruptedException ex) {}
+    }
+
+    /**
+     * Constructs a new {@link JournalWriter}; The blocks of the journal
+     * segments that are on disk are recovered and carried over into a new
+     * segment before the old segments are deleted. The sequences continue
+     * after the highest sequence of a recovered block or a stored profile
+     * so that a new block is never taken to be included in a profile.
+     * @param directory The directory that the journal segments are stored in.
+     * @param profileService The service that saves the profiles.
+     * @throws IOException If the journal could not be opened.
+     */
+    JournalWriter(String directory, ProfileService profileService) throws IOException {
+        this.directory = directory;
+        this.profileService = profileService;
+        new File(directory).mkdirs();
+        pendingBlocks = new ByteBuffer(4096);
+        writingBlocks = new ByteBuffer(4096);
+        recoveredBlocks = new HashTable(64);
+        checksum = new CRC32();
+        lastSequence = profileService.getSequence();
+        String[] names = new File(directory).list();
+        int amountSegments = 0;
+        int[] ids = new int[names == null ? 0 : names.length];
+        for(int i = 0; i < ids.length; i++) {
+            if(!names[i].startsWith(SEGMENT_PREFIX))
+                continue;
+            try {
+                ids[amountSegments++] = Integer.parseInt(names[i].substring(SEGMENT_PREFIX.length()));
+            } catch(NumberFormatException ex) {
+                amountSegments--;
+            }
+        }
+        ids = Arrays.copyOf(ids, amountSegments);
+        Arrays.sort(ids);
+        readSegments(ids);
+        firstSegmentId = amountSegments > 0 ? ids[0] : 0;
+        segmentId = amountSegments > 0 ? ids[amountSegments - 1] : -1;
+        openSegment();
+        if(recoveredBlocks.size > 0)
+            LOGGER.log(Level.INFO, "Recovered the journal of {0} players", recoveredBlocks.size);
+        checkpoint();
+        checkpointOffset = -1;
+        write(pendingBlocks.payload, 0, pendingBlocks.offset);
+        pendingBlocks.offset = 0;
+        deleteSegments();
+        initialize();
+    }
+}
@@ -2,8 +2,10 @@ package org.runetekk;
 
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
@@ -15,6 +17,8 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.logging.Level;
@@ -59,19 +63,122 @@ public final class Main implements Runnable {
     private static Main main;
     
     /**
-     * The regions for this handler.
+     * The chunks for this handler.
      */
-    static Region[][] regions;
+    static ChunkTable chunkTable;
+    
+    /**
+     * The pool of instanced areas for this handler.
+     */
+    static InstancePool instancePool;
+    
+    /**
+     * The cached constructed map payloads, keyed by window origin.
+     */
+    static HashTable chunkPayloads;
+    
+    /**
+     * The chunks that recorded item updates since the last flush in the
+     * form of chunkX << 16 | chunkY.
+     */
+    static IndexList updatedChunks;
+    
+    /**
+     * The allocator of the slots in the ground items array.
+     */
+    static SlotAllocator itemSlots;
+    
+    /**
+     * The amount of ground items that could not be created because every
+     * slot was in use.
+     */
+    static int amountDroppedItems;
+    
+    /**
+     * The maximum amount of ground items on a single tile.
+     */
+    static int maximumTileItems;
+    
+    /**
+     * The maximum amount of ground items in a single chunk.
+     */
+    static int maximumChunkItems;
+    
+    /**
+     * The definitions of the items.
+     */
+    static ItemDefinitions itemDefinitions;
+    
+    /**
+     * The timers that reveal and destroy the ground items.
+     */
+    static ItemTimerQueue itemTimers;
+    
+    /**
+     * The path of the ground item snapshot file, null if snapshots are
+     * disabled.
+     */
+    static String snapshotPath;
+    
+    /**
+     * The time in milliseconds between ground item snapshots.
+     */
+    static long snapshotTime;
+    
+    /**
+     * The path of the directory that the player profiles and their journal
+     * are stored in.
+     */
+    static String profilePath;
+    
+    /**
+     * The name of the player profile store file.
+     */
+    static String profileFile;
+    
+    /**
+     * The amount of profiles that a new profile store can hold before its
+     * index grows.
+     */
+    static int profileCapacity;
+    
+    /**
+     * The time in milliseconds between journal checkpoints.
+     */
+    static long checkpointTime;
+    
+    /**
+     * The collision map of the landscape.
+     */
+    static CollisionMap collisionMap;
+    
+    /**
+     * The {@link PathFinder} used by the main handler.
+     */
+    static PathFinder pathFinder;
     
     /**
      * The {@link Client} array.
      */
     static Client[] clientArray;
     
+    /**
+     * The ids of the logged in clients keyed by the base 37 encoded name of
+     * their player.
+     */
+    static IntHashTable clientNames;
+    
     /**
      * The {@link GroundItem} array.
      */
-    static GroundItem[] groundItems;
+    static GroundItemStore groundItems;
+    
+    /**
+     * The lists of private ground items restored from the snapshot keyed by
+     * the base 37 encoded name of their owner, a list is removed once the
+     * owner logs in.
+     */
+    static HashTable restoredItems;
     
     /**
      * The music names array.
@@ -96,7 +203,17 @@ public final class Main implements Runnable {
     /**
      * The maximum amount of ground items allowed to spawn on this server.
      */
-    static final int MAXIMUM_GROUNDITEMS = 5000;
+    static final int MAXIMUM_GROUNDITEMS = 65536;
+    
+    /**
+     * The version of the ground item snapshot format.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+    
+    /**
+     * The amount of bytes that a ground item takes in a snapshot.
+     */
+    private static final int SNAPSHOT_ITEM_SIZE = 28;
     
     /**
      * The local thread.
@@ -124,20 +241,67 @@ public final class Main implements Runnable {
     ListNode removedClientList;
     
     /**
-     * The offset in the client list.
+     * The list of client ids removed from the server whose profile was not
+     * saved yet, the ids are moved to the removed client list once it is.
      */
-    int clientListOffset;
+    ListNode closedClientList;
     
     /**
-     * The offset in the item list.
+     * The clients removed from the server whose profile was not saved yet.
      */
-    int itemListOffset;
+    Client[] closedClients;
+    
+    /**
+     * The offset in the client list.
+     */
+    int clientListOffset;
     
     /**
      * The {@link IoWriter} for this handler.
      */
     IoWriter writer;
     
+    /**
+     * The {@link TickWorker}s that update the client shards, the first of
+     * which is run on the local thread.
+     */
+    TickWorker[] workers;
+    
+    /**
+     * The ids of the clients in the reset state, they are reset once every
+     * worker has finished so that the updates written during the pass read
+     * the flags of the pass.
+     */
+    IndexList resetClients;
+    
+    /**
+     * The {@link ItemSnapshotWriter} for this handler, null if snapshots
+     * are disabled.
+     */
+    ItemSnapshotWriter snapshotWriter;
+    
+    /**
+     * The next time when a ground item snapshot will be taken.
+     */
+    long nextSnapshot;
+    
+    /**
+     * The {@link ProfileService} that loads and saves the player profiles
+     * for this handler.
+     */
+    ProfileService profileService;
+    
+    /**
+     * The {@link JournalWriter} that the state changes of the clients are
+     * journaled to.
+     */
+    JournalWriter journalWriter;
+    
+    /**
+     * The next time when a journal checkpoint will be taken.
+     */
+    long nextCheckpoint;
+    
     /**
      * The next time when the garbage will be taken out.
      */
@@ -161,31 +325,76 @@ public final class Main implements Runnable {
         + "\n----------------------------------------------------------------------------------");
     }
     
+    /**
+     * Maps a file into memory as read only.
+     * @param path The path of the file to map.
+     * @return The mapped buffer.
+     */
+    private static MappedByteBuffer mapFile(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, file.length());
+        } finally {
+            file.close();
+        }
+    }
+    
+    /**
+     * Unpacks a gzip compressed file.
+     * @param data The compressed file.
+     * @return The unpacked file.
+     */
+    private static byte[] unpackGzip(byte[] data) throws IOException {
+        GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream os = new ByteArrayOutputStream(data.length * 4);
+        byte[] chunk = new byte[4096];
+        int read;
+        while((read = is.read(chunk)) != -1)
+            os.write(chunk, 0, read);
+        is.close();
+        return os.toByteArray();
+    }
+    
     /**
      * Loads the regions for the server.
+     * @param buffer The mapped regions file to load the regions from.
      */
-    private static void loadRegions(DataInputStream is) throws IOException {
-        regions = new Region[256][];
+    private static void loadRegions(MappedByteBuffer buffer) {
+        Region[] regions = new Region[256 * 256];
+        IndexList chunkHashes = new IndexList(4096);
+        byte[] hashes = new byte[256];
+        int minimumX = Math.min(Entity.DEFAULT_X >> 3, InstancePool.FIRST_AREA_X);
+        int minimumY = Math.min(Entity.DEFAULT_Y >> 3, InstancePool.FIRST_AREA_Y);
+        int maximumX = InstancePool.getChunkX(InstancePool.MAXIMUM_AREAS - 1) + InstancePool.AREA_SIZE - 1;
+        int maximumY = InstancePool.getChunkY(InstancePool.MAXIMUM_AREAS - 1) + InstancePool.AREA_SIZE - 1;
         int opcode = 0;
-        while((opcode = is.read()) != 0) {
+        while(buffer.hasRemaining() && (opcode = buffer.get() & 0xFF) != 0) {
             switch(opcode) {
                 case 1:
                     {
-                        int regionX = is.read();
-                        int amountRegions = is.read();
-                        regions[regionX] = new Region[255];                  
+                        int regionX = buffer.get() & 0xFF;
+                        int amountRegions = buffer.get() & 0xFF;
                         for(int i = 0; i < amountRegions; i++) {
-                            int regionY = is.read();
-                            regions[regionX][regionY] = new Region();
-                            if(is.read() != 0) {
-                                int amountChunks = is.read();
+                            int regionY = buffer.get() & 0xFF;
+                            regions[regionX << 8 | regionY] = new Region();
+                            if(buffer.get() != 0) {
+                                int amountChunks = buffer.get() & 0xFF;
+                                buffer.get(hashes, 0, amountChunks);
                                 for(int j = 0; j < amountChunks; j++) {
-                                    int hash = is.read();
-                                    if(regions[regionX][regionY].chunks == null)
-                                        regions[regionX][regionY].chunks = new Chunk[8][];
-                                    if(regions[regionX][regionY].chunks[hash >> 3] == null)
-                                        regions[regionX][regionY].chunks[hash >> 3] = new Chunk[8];
-                                    regions[regionX][regionY].chunks[hash >> 3][hash & 0x7] = new Chunk();
+                                    int hash = hashes[j] & 0xFF;
+                                    int chunkX = regionX << 3 | hash >> 3;
+                                    int chunkY = regionY << 3 | hash & 0x7;
+                                    if(InstancePool.isPooled(chunkX, chunkY))
+                                        throw new RuntimeException("Region chunk inside the instance pool - " + chunkX + ", " + chunkY);
+                                    if(chunkX < minimumX)
+                                        minimumX = chunkX;
+                                    if(chunkX > maximumX)
+                                        maximumX = chunkX;
+                                    if(chunkY < minimumY)
+                                        minimumY = chunkY;
+                                    if(chunkY > maximumY)
+                                        maximumY = chunkY;
+                                    chunkHashes.add(chunkX << 16 | chunkY);
                                 }
                             }
                         }
@@ -195,43 +404,330 @@ public final class Main implements Runnable {
                     
                 case 2:
                     {
-                        int x = is.read();
-                        int y = is.read();
-                        int id = is.read() << 8 | is.read();
+                        int x = buffer.get() & 0xFF;
+                        int y = buffer.get() & 0xFF;
+                        int id = buffer.getShort() & 0xFFFF;
                         Region region = null;
-                        if(regions == null || regions[x] == null || (region = regions[x][y]) == null)
+                        if((region = regions[x << 8 | y]) == null)
                             continue;
                         region.songId = id;
                     }
                     break;
             }
         }
-        regions[Entity.DEFAULT_X >> 6] = new Region[256];
-        Region region = regions[Entity.DEFAULT_X >> 6][Entity.DEFAULT_Y >> 6] = new Region();
-        region.chunks = new Chunk[8][8];
-        region.chunks[(Entity.DEFAULT_X >> 3) - ((Entity.DEFAULT_X >> 6) << 3)][(Entity.DEFAULT_Y >> 3) - ((Entity.DEFAULT_Y >> 6) << 3)] = new CustomChunk();
+        chunkTable = new ChunkTable(minimumX, minimumY, maximumX, maximumY);
+        for(int i = 0; i < chunkHashes.size; i++) {
+            int chunkX = chunkHashes.values[i] >>> 16;
+            int chunkY = chunkHashes.values[i] & 0xFFFF;
+            Chunk chunk = new Chunk();
+            chunk.region = regions[(chunkX >> 3) << 8 | chunkY >> 3];
+            chunkTable.put(chunkX, chunkY, chunk);
+        }
+        Chunk chunk = new CustomChunk();
+        chunk.region = new Region();
+        chunkTable.put(Entity.DEFAULT_X >> 3, Entity.DEFAULT_Y >> 3, chunk);
+        instancePool = new InstancePool();
+        chunkPayloads = new HashTable(1024);
+        updatedChunks = new IndexList(64);
+        itemTimers = new ItemTimerQueue(GroundItemStore.SEGMENT_SIZE);
+    }
+    
+    /**
+     * Encodes every live ground item outside of the instanced chunks into a
+     * snapshot. Only memory is touched so that the snapshot can be taken on
+     * the local thread, the snapshot is written by the
+     * {@link ItemSnapshotWriter}. The timers are stored as the time left
+     * so that the time that the server is down is not counted.
+     * @param time The current time in milliseconds.
+     * @return The encoded snapshot.
+     */
+    private static byte[] captureItems(long time) {
+        int amountItems = 0;
+        for(int i = 0; i < itemSlots.capacity; i++) {
+            GroundItem groundItem = groundItems.get(i);
+            if(groundItem != null && !groundItem.remove && !InstancePool.isPooled(groundItem.coordX >> 3, groundItem.coordY >> 3))
+                amountItems++;
+        }
+        ByteBuffer buffer = new ByteBuffer(6 + amountItems * SNAPSHOT_ITEM_SIZE);
+        buffer.putWord(SNAPSHOT_VERSION);
+        buffer.putDword(amountItems);
+        for(int i = 0; i < itemSlots.capacity; i++) {
+            GroundItem groundItem = groundItems.get(i);
+            if(groundItem == null || groundItem.remove || InstancePool.isPooled(groundItem.coordX >> 3, groundItem.coordY >> 3))
+                continue;
+            buffer.putWord(groundItem.id);
+            buffer.putDword(groundItem.amount);
+            buffer.putWord(groundItem.coordX);
+            buffer.putWord(groundItem.coordY);
+            buffer.putByte(groundItem.coordZ);
+            buffer.putByte(groundItem.isPublic ? 1 : 0);
+            buffer.putQword(groundItem.ownerName);
+            buffer.putDword(groundItem.appearTime > time ? groundItem.appearTime - time : 0);
+            buffer.putDword(groundItem.destroyTime > time ? groundItem.destroyTime - time : 0);
+        }
+        return buffer.payload;
+    }
+    
+    /**
+     * Loads the ground items from a snapshot in one pass. The restored items
+     * keep the name of their owner and are bound to the client of the owner
+     * once it logs in, items that are no longer in a loaded chunk are
+     * dropped.
+     * @param buffer The mapped snapshot file to load the items from.
+     * @param time The current time in milliseconds.
+     */
+    private static void loadItems(MappedByteBuffer buffer, long time) {
+        int version = buffer.getShort() & 0xFFFF;
+        if(version != SNAPSHOT_VERSION)
+            throw new RuntimeException("Unsupported item snapshot version " + version);
+        int amountItems = buffer.getInt();
+        int amountLoaded = 0;
+        for(int i = 0; i < amountItems; i++) {
+            int id = buffer.getShort() & 0xFFFF;
+            int amount = buffer.getInt();
+            int coordX = buffer.getShort() & 0xFFFF;
+            int coordY = buffer.getShort() & 0xFFFF;
+            int coordZ = buffer.get() & 0xFF;
+            boolean isPublic = buffer.get() != 0;
+            long ownerName = buffer.getLong();
+            long appearTime = time + (buffer.getInt() & 0xFFFFFFFFL);
+            long destroyTime = time + (buffer.getInt() & 0xFFFFFFFFL);
+            Chunk chunk = chunkTable.get(coordX >> 3, coordY >> 3);
+            if(chunk == null || InstancePool.isPooled(coordX >> 3, coordY >> 3))
+                continue;
+            int itemSlot = itemSlots.allocate();
+            if(itemSlot < 0)
+                break;
+            GroundItem groundItem = new GroundItem();
+            groundItem.localId = itemSlot;
+            groundItem.creatorId = -1;
+            groundItem.ownerName = ownerName;
+            groundItem.coordX = coordX;
+            groundItem.coordY = coordY;
+            groundItem.coordZ = coordZ;
+            groundItem.id = id;
+            groundItem.amount = amount;
+            groundItem.appearTime = appearTime;
+            groundItem.destroyTime = destroyTime;
+            groundItem.isPublic = isPublic;
+            groundItem.updateRegion();
+            itemTimers.add(groundItem, isPublic ? destroyTime : appearTime);
+            groundItems.put(itemSlot, groundItem);
+            if(!isPublic) {
+                ListNode list = (ListNode) restoredItems.get(ownerName);
+                if(list == null) {
+                    list = new ListNode();
+                    list.parentNode = list;
+                    list.childNode = list;
+                    restoredItems.put(ownerName, list);
+                }
+                ListNode node = new GroundItemNode(groundItem);
+                node.parentNode = list.parentNode;
+                node.childNode = list;
+                node.parentNode.childNode = node;
+                node.childNode.parentNode = node;
+            }
+            amountLoaded++;
+        }
+        LOGGER.log(Level.INFO, "Loaded {0} of {1} ground items from the snapshot.", new Object[]{ amountLoaded, amountItems });
+    }
+    
+    /**
+     * Binds the private ground items that were restored from a snapshot to
+     * the client of their owner so that the owner can see and pick them up
+     * again. Items that were destroyed or revealed since are left alone.
+     * @param client The client that logged in.
+     */
+    private static void bindItems(Client client) {
+        ListNode list = (ListNode) restoredItems.remove(client.nameKey);
+        if(list == null)
+            return;
+        ListNode node = list;
+        while((node = node.childNode) != list) {
+            GroundItem groundItem = ((GroundItemNode) node).groundItem;
+            if(groundItem.remove || groundItem.isPublic)
+                continue;
+            groundItem.creatorId = client.localId.value;
+            groundItem.referenceNode = new IntegerNode(groundItem.localId);
+            groundItem.referenceNode.parentNode = client.spawnedItems.parentNode;
+            groundItem.referenceNode.childNode = client.spawnedItems;
+            groundItem.referenceNode.parentNode.childNode = groundItem.referenceNode;
+            groundItem.referenceNode.childNode.parentNode = groundItem.referenceNode;
+        }
+    }
+    
+    /**
+     * Fires the ground item timers that are due. A private item is revealed
+     * to everyone and given a timer for when it is destroyed, a public item
+     * is destroyed. Timers of items that were already destroyed are dropped.
+     * @param time The current time in milliseconds.
+     */
+    private static void processItemTimers(long time) {
+        GroundItem groundItem;
+        while((groundItem = itemTimers.poll(time)) != null) {
+            if(groundItem.remove)
+                continue;
+            if(!groundItem.isPublic) {
+                groundItem.isPublic = true;
+                queueItemUpdate(groundItem, false);
+                Chunk chunk = chunkTable.get(groundItem.coordX >> 3, groundItem.coordY >> 3);
+                if(chunk != null)
+                    chunk.updateItemVersion();
+                itemTimers.add(groundItem, groundItem.destroyTime);
+            } else
+                groundItem.destroy();
+        }
+    }
+    
+    /**
+     * Records an item update in the chunk of a ground item so that it is
+     * encoded once for every client that views the chunk.
+     * @param groundItem The ground item that was updated.
+     * @param isRemoval The ground item was removed, otherwise it was revealed.
+     */
+    static void queueItemUpdate(GroundItem groundItem, boolean isRemoval) {
+        int chunkX = groundItem.coordX >> 3;
+        int chunkY = groundItem.coordY >> 3;
+        Chunk chunk = chunkTable.get(chunkX, chunkY);
+        if(chunk == null)
+            return;
+        if(!chunk.isUpdated) {
+            if(chunk.itemUpdates == null) {
+                chunk.itemUpdates = new byte[Chunk.MAXIMUM_UPDATE_SIZE];
+                chunk.updatedItems = new IndexList(8);
+            }
+            chunk.isUpdated = true;
+            updatedChunks.add(chunkX << 16 | chunkY);
+        }
+        if(chunk.isOverflowed)
+            return;
+        if(chunk.updateSize + 8 > Chunk.MAXIMUM_UPDATE_SIZE) {
+            chunk.isOverflowed = true;
+            return;
+        }
+        ByteBuffer buffer = new ByteBuffer(chunk.itemUpdates);
+        buffer.offset = chunk.updateSize;
+        if(isRemoval) {
+            buffer.putByte(156);
+            Client.putRemoveGroundItem(buffer, groundItem);
+        } else {
+            buffer.putByte(215);
+            Client.putGroundItem(buffer, groundItem);
+        }
+        chunk.updateSize = buffer.offset;
+        chunk.updatedItems.add(groundItem.coordZ << 17 | (isRemoval ? 1 << 16 : 0) | groundItem.localId);
+    }
+    
+    /**
+     * Finds a ground item that a dropped item can be merged into. Only items
+     * that are still private to the client that dropped them are merged.
+     * @param chunk The chunk of the tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The plane of the tile.
+     * @param id The id of the dropped item.
+     * @param creatorId The local id of the client that dropped the item.
+     * @return The ground item or null if there is none.
+     */
+    static GroundItem findStack(Chunk chunk, int x, int y, int z, int id, int creatorId) {
+        if(!itemDefinitions.isValid(id) || !itemDefinitions.isStackable(id))
+            return null;
+        ListNode node = chunk.activeItems;
+        while((node = node.childNode) != null) {
+            if(!(node instanceof GroundItem))
+                break;
+            GroundItem groundItem = (GroundItem) node;
+            if(groundItem.id == id && groundItem.creatorId == creatorId && !groundItem.isPublic &&
+               groundItem.coordX == x && groundItem.coordY == y && groundItem.coordZ == z)
+                return groundItem;
+        }
+        return null;
+    }
+    
+    /**
+     * Destroys the oldest ground items of a tile and its chunk until there
+     * is room for another item in both.
+     * @param chunk The chunk of the tile.
+     * @param x The x coordinate of the tile.
+     * @param y The y coordinate of the tile.
+     * @param z The plane of the tile.
+     */
+    static void evictItems(Chunk chunk, int x, int y, int z) {
+        int amountTile = 0;
+        int amountChunk = 0;
+        ListNode node = chunk.activeItems;
+        while((node = node.childNode) != null) {
+            if(!(node instanceof GroundItem))
+                break;
+            GroundItem groundItem = (GroundItem) node;
+            amountChunk++;
+            if(groundItem.coordX == x && groundItem.coordY == y && groundItem.coordZ == z)
+                amountTile++;
+        }
+        node = chunk.activeItems.childNode;
+        while(node instanceof GroundItem && (amountTile >= maximumTileItems || amountChunk >= maximumChunkItems)) {
+            GroundItem groundItem = (GroundItem) node;
+            node = node.childNode;
+            boolean isOnTile = groundItem.coordX == x && groundItem.coordY == y && groundItem.coordZ == z;
+            if(amountChunk < maximumChunkItems && !isOnTile)
+                continue;
+            groundItem.destroy();
+            amountChunk--;
+            if(isOnTile)
+                amountTile--;
+        }
+    }
+    
+    /**
+     * Sends the item updates of every updated chunk to the clients that
+     * view it. The viewers of a chunk are found in the chunks that are close
+     * enough for the chunk to be in their map.
+     */
+    private static void flushItemUpdates() {
+        for(int i = 0; i < updatedChunks.size; i++) {
+            int chunkX = updatedChunks.values[i] >>> 16;
+            int chunkY = updatedChunks.values[i] & 0xFFFF;
+            Chunk chunk = chunkTable.get(chunkX, chunkY);
+            if(chunk == null || !chunk.isUpdated)
+                continue;
+            if(!chunk.isOverflowed) {
+                for(int x = chunkX - 9; x <= chunkX + 9; x++) {
+                    for(int y = chunkY - 9; y <= chunkY + 9; y++) {
+                        Chunk viewedChunk = chunkTable.get(x, y);
+                        if(viewedChunk == null)
+                            continue;
+                        ListNode node = viewedChunk.activePlayers;
+                        while((node = node.childNode) != null) {
+                            if(!(node instanceof Client))
+                                break;
+                            Client.sendItemUpdates((Client) node, chunk, chunkX, chunkY);
+                        }
+                    }
+                }
+            }
+            chunk.clearItemUpdates();
+        }
+        updatedChunks.clear();
     }
     
     /**
      * Loads the music configurations for the server.
-     * @param is The data input stream to load the musics for.
+     * @param buffer The mapped musics file to load the musics from.
      */
-    private static void loadMusics(DataInputStream is) throws IOException {
-        int maximumId = (is.read() << 8 | is.read()) + 1;
+    private static void loadMusics(MappedByteBuffer buffer) {
+        int maximumId = (buffer.getShort() & 0xFFFF) + 1;
         int opcode = 0;
-        while((opcode = is.read()) != 0) {
+        while(buffer.hasRemaining() && (opcode = buffer.get() & 0xFF) != 0) {
             switch(opcode) {
                 
                 case 1:
                     if(musicNames == null)
                         musicNames = new String[maximumId];
-                    int id = is.read() << 8 | is.read();
-                    String str = "";
-                    int len = is.read();
-                    while(len-- > 0) {
-                        str += (char) is.read();
-                    }
-                    musicNames[id] = str;
+                    int id = buffer.getShort() & 0xFFFF;
+                    char[] str = new char[buffer.get() & 0xFF];
+                    for(int i = 0; i < str.length; i++)
+                        str[i] = (char) (buffer.get() & 0xFF);
+                    musicNames[id] = new String(str);
                     break;
             }
         }
@@ -239,18 +735,18 @@ public final class Main implements Runnable {
     
     /**
      * Loads the farming configurations for the server.
-     * @param is The data input stream to load the farming data for.
+     * @param buffer The mapped farming file to load the farming data from.
      */
-    private static void loadFarming(DataInputStream is) throws IOException {
+    private static void loadFarming(MappedByteBuffer buffer) {
         int opcode = 0;
-        while((opcode = is.read()) != 0) {
+        while(buffer.hasRemaining() && (opcode = buffer.get() & 0xFF) != 0) {
             switch(opcode) {
                 
                 case 1:
                     {
-                        int type = is.read();
-                        int amount = is.read();
-                        int crops = is.read();
+                        int type = buffer.get() & 0xFF;
+                        int amount = buffer.get() & 0xFF;
+                        int crops = buffer.get() & 0xFF;
                         if(farmingTypeConfigs == null)
                             farmingTypeConfigs = new int[256][];
                         farmingTypeConfigs[type] = new int[amount];      
@@ -261,9 +757,9 @@ public final class Main implements Runnable {
                     
                 case 2:
                     {
-                        int type = is.read();
-                        int patch = is.read();
-                        farmingTypeConfigs[type][patch] = is.read() << 8 | is.read();
+                        int type = buffer.get() & 0xFF;
+                        int patch = buffer.get() & 0xFF;
+                        farmingTypeConfigs[type][patch] = buffer.getShort() & 0xFFFF;
                     }
                     break;
                     
@@ -272,13 +768,13 @@ public final class Main implements Runnable {
                 case 5:
                 case 6:
                     {
-                        int type = is.read();
-                        int crop = is.read();
+                        int type = buffer.get() & 0xFF;
+                        int crop = buffer.get() & 0xFF;
                         if(farmingPatchConfigs[type][crop] == null)
                             farmingPatchConfigs[type][crop] = new int[5];
-                        farmingPatchConfigs[type][crop][opcode - 3] = is.read() << 8 | is.read();
+                        farmingPatchConfigs[type][crop][opcode - 3] = buffer.getShort() & 0xFFFF;
                         if(opcode == 3) {
-                            farmingPatchConfigs[type][crop][4] = is.read() << 16 | is.read() << 8 | is.read();
+                            farmingPatchConfigs[type][crop][4] = (buffer.get() & 0xFF) << 16 | buffer.getShort() & 0xFFFF;
                         }
                     }
                     break;
@@ -288,9 +784,14 @@ public final class Main implements Runnable {
     
     /**
      * Initializes the local thread.
+     * @param amountWorkers The amount of client shards to update in parallel.
      */
-    private void initialize() {
+    private void initialize(int amountWorkers) {
         writer = new IoWriter(this);
+        resetClients = new IndexList(MAXIMUM_CLIENTS);
+        workers = new TickWorker[amountWorkers];
+        for(int i = 0; i < amountWorkers; i++)
+            workers[i] = new TickWorker(i > 0);
         thread = new Thread(this);
         thread.start();
     }
@@ -469,80 +970,125 @@ public final class Main implements Runnable {
                                     client.uid = buffer.getDword();
                                     client.username = buffer.getString();
                                     client.password = buffer.getString();
-                                    client.timeoutStamp = -1L;
-                                    /* REDESIGN BIT */
-                                    byte[] response = new byte[3];
-                                    response[0] = (byte) 2;
-                                    response[1] = (byte) 2; //client.rights;
-                                    client.outputStream.write(response);     
-                                    client.outgoingBuffer = new byte[Client.BUFFER_SIZE];
-                                    /* UPDATE STUFF */
-                                    client.flagBuffer = new ByteBuffer(122);
-                                    client.appearanceUpdates = new boolean[MAXIMUM_CLIENTS];
-                                    client.activePlayers = new ListNode();
-                                    client.activePlayers.childNode = client.activePlayers;
-                                    client.activePlayers.parentNode = client.activePlayers;
-                                    client.addedPlayers = new ListNode();
-                                    client.addedPlayers.childNode = client.addedPlayers;
-                                    client.addedPlayers.parentNode = client.addedPlayers;
-                                    client.playerIndex = new byte[(MAXIMUM_CLIENTS + 7) >> 3];
-                                    /* MUSIC STUFF */
-                                    client.activeMusic = new byte[(musicNames.length + 7) >> 3];
-                                    /* FARMING STUFF */
-                                    client.patchTimestamps = new long[farmingTypeConfigs.length][];
-                                    client.patchStates = new int[farmingTypeConfigs.length][];
-                                    for(int i = 0; i < farmingTypeConfigs.length; i++) {
-                                        if(farmingTypeConfigs[i] != null) {
-                                            client.patchTimestamps[i] = new long[farmingTypeConfigs[i].length];                                       
-                                            client.patchStates[i] = new int[farmingTypeConfigs[i].length];
+                                    long nameKey = Client.encodeBase37(client.username);
+                                    synchronized(removedClientList) {
+                                        if(clientNames.get(nameKey, -1) >= 0) {
+                                            client.outputStream.write(5);
+                                            LOGGER.log(Level.WARNING, "Client disconnected : already logged in!");
+                                            removeClient(position);
+                                            client.destroy();
+                                            continue;
                                         }
+                                        clientNames.put(nameKey, position.value);
                                     }
-                                    client.patchStates[0][1] = 3;
-                                    /* APPEARANCE STUFF */
-                                    client.appearanceStates = new int[12];
-                                    client.appearanceStates[0] = 20 | 256;
-                                    client.appearanceStates[1] = 31 | 256;
-                                    client.appearanceStates[2] = 39 | 256;
-                                    client.appearanceStates[3] = 1 | 256;
-                                    client.appearanceStates[4] = 33 | 256;
-                                    client.appearanceStates[5] = 42 | 256;
-                                    client.appearanceStates[6] = 16 | 256;
-                                    client.colorIds = new int[5];
-                                    client.animationIds = new int[7];
-                                    client.animationIds[0] = 0x328;
-                                    client.animationIds[1] = 0x327;
-                                    client.animationIds[2] = 0x333;
-                                    client.animationIds[3] = 0x334;
-                                    client.animationIds[4] = 0x335;
-                                    client.animationIds[5] = 0x338;
-                                    client.animationIds[6] = 0x338;
-                                    /* ITEMS STUFF */
-                                    client.widgetItems = new HashTable(10);  
-                                    Item[] items = new Item[Client.INVENTORY_SIZE];
-                                    for(int i = 0; i < items.length; i++) {
-                                        Item item = items[i] = new Item();
-                                        item.id = 1038;
-                                        item.amount = 1;
-                                    }
-                                    client.widgetItems.put(new ItemArray(items), 3214);
-                                    /* GROUND ITEM STUFF */
-                                    client.spawnedItems = new ListNode();
-                                    client.spawnedItems.parentNode = client.spawnedItems;
-                                    client.spawnedItems.childNode = client.spawnedItems;
-                                    client.activeItems = new ListNode();
-                                    client.activeItems.parentNode = client.activeItems;
-                                    client.activeItems.childNode = client.activeItems;
-                                    client.itemIndex = new byte[(MAXIMUM_GROUNDITEMS + 7) >> 3];
-                                    /* SKILL STUFF */
-                                    client.skillExperience = new int[Client.AMOUNT_SKILLS];
-                                    client.skillHashes = new int[Client.AMOUNT_SKILLS];
+                                    client.nameKey = nameKey;
                                     /* ISAAC STUFF */
                                     client.incomingCipher = new IsaacCipher(seeds);
                                     for(int i = 0; i < seeds.length; i++)
                                         seeds[i] += 50;
                                     client.outgoingCipher = new IsaacCipher(seeds);
-                                    client.state = 1;
+                                    client.timeoutStamp = System.currentTimeMillis() + 15000L;
+                                    profileService.load(client);
+                                    client.state = 7;
+                                }
+                                break;
+                                
+                            case 7:
+                                if(!profileService.isLoaded(client))
+                                    break;
+                                if(client.isProfileFailed) {
+                                    client.outputStream.write(13);
+                                    LOGGER.log(Level.WARNING, "Client disconnected : profile could not be loaded!");
+                                    removeClient(position);
+                                    client.destroy();
+                                    continue;
+                                }
+                                client.timeoutStamp = -1L;
+                                /* REDESIGN BIT */
+                                byte[] response = new byte[3];
+                                response[0] = (byte) 2;
+                                response[1] = (byte) 2; //client.rights;
+                                client.outputStream.write(response);     
+                                client.outgoingBuffer = new byte[Client.BUFFER_SIZE];
+                                /* UPDATE STUFF */
+                                client.flagBuffer = new ByteBuffer(122);
+                                client.appearanceUpdates = new boolean[MAXIMUM_CLIENTS];
+                                client.activePlayers = new IndexList(Client.PLAYER_UPDATES);
+                                client.addedPlayers = new IndexList(Client.PLAYER_UPDATES);
+                                client.playerIndex = new long[(MAXIMUM_CLIENTS + 63) >> 6];
+                                /* MUSIC STUFF */
+                                client.activeMusic = new byte[(musicNames.length + 7) >> 3];
+                                /* FARMING STUFF */
+                                client.patchTimestamps = new long[farmingTypeConfigs.length][];
+                                client.patchStates = new int[farmingTypeConfigs.length][];
+                                for(int i = 0; i < farmingTypeConfigs.length; i++) {
+                                    if(farmingTypeConfigs[i] != null) {
+                                        client.patchTimestamps[i] = new long[farmingTypeConfigs[i].length];                                       
+                                        client.patchStates[i] = new int[farmingTypeConfigs[i].length];
+                                    }
+                                }
+                                client.patchStates[0][1] = 3;
+                                /* APPEARANCE STUFF */
+                                client.appearanceStates = new int[12];
+                                client.appearanceStates[0] = 20 | 256;
+                                client.appearanceStates[1] = 31 | 256;
+                                client.appearanceStates[2] = 39 | 256;
+                                client.appearanceStates[3] = 1 | 256;
+                                client.appearanceStates[4] = 33 | 256;
+                                client.appearanceStates[5] = 42 | 256;
+                                client.appearanceStates[6] = 16 | 256;
+                                client.colorIds = new int[5];
+                                client.animationIds = new int[7];
+                                client.animationIds[0] = 0x328;
+                                client.animationIds[1] = 0x327;
+                                client.animationIds[2] = 0x333;
+                                client.animationIds[3] = 0x334;
+                                client.animationIds[4] = 0x335;
+                                client.animationIds[5] = 0x338;
+                                client.animationIds[6] = 0x338;
+                                /* ITEMS STUFF */
+                                client.widgetItems = new HashTable(4);  
+                                client.updatedWidgets = new IndexList(4);
+                                ItemContainer inventory = new ItemContainer(3214, Client.INVENTORY_SIZE, client.updatedWidgets);
+                                for(int i = 0; i < Client.INVENTORY_SIZE; i++)
+                                    inventory.set(i, 1038, 1);
+                                inventory.clearDirty();
+                                inventory.sideWidgetId = Client.BANK_INVENTORY_WIDGET;
+                                client.updatedWidgets.clear();
+                                client.widgetItems.put(3214, inventory);
+                                client.widgetItems.put(Client.BANK_INVENTORY_WIDGET, inventory);
+                                ItemContainer bank = new ItemContainer(Client.BANK_WIDGET, Client.BANK_SIZE, client.updatedWidgets);
+                                bank.isStacking = true;
+                                bank.slotIndex = new IntHashTable(Client.BANK_SIZE);
+                                client.widgetItems.put(Client.BANK_WIDGET, bank);
+                                /* GROUND ITEM STUFF */
+                                client.spawnedItems = new ListNode();
+                                client.spawnedItems.parentNode = client.spawnedItems;
+                                client.spawnedItems.childNode = client.spawnedItems;
+                                client.activeItems = new ListNode();
+                                client.activeItems.parentNode = client.activeItems;
+                                client.activeItems.childNode = client.activeItems;
+                                client.itemIndex = new PagedBitSet(MAXIMUM_GROUNDITEMS);
+                                client.itemVersions = new int[13 * 13];
+                                client.itemSyncKey = -1L;
+                                bindItems(client);
+                                /* SKILL STUFF */
+                                client.skillExperience = new int[Client.AMOUNT_SKILLS];
+                                client.skillHashes = new int[Client.AMOUNT_SKILLS];
+                                client.skillExperience[3] = 1154;
+                                client.skillHashes[3] = 10;
+                                /* PROFILE STUFF */
+                                long sequence = 0L;
+                                if(client.profile != null) {
+                                    sequence = PlayerProfile.decode(client, client.profile);
+                                    client.profile = null;
                                 }
+                                /* JOURNAL STUFF */
+                                client.journal = new StateJournal();
+                                inventory.journal = client.journal;
+                                bank.journal = client.journal;
+                                journalWriter.recover(client, sequence);
+                                client.state = 1;
                                 break;
                             
                             
@@ -616,12 +1162,32 @@ public final class Main implements Runnable {
                                         /* Command */
                                         case 103:        
                                             client.commandStr = new String(buffer.payload, 0, size);                                      
+                                            String command = client.commandStr.trim();
+                                            if(command.equals("bank"))
+                                                Client.openBank(client);
+                                            else if(command.equals("instance")) {
+                                                if(InstancePool.isPooled(client.coordX >> 3, client.coordY >> 3)) {
+                                                    Client.sendMessage(client, "You can not create an instance here.");
+                                                    break;
+                                                }
+                                                int area = instancePool.allocate(InstancePool.createTemplate(client.coordX >> 6, client.coordY >> 6));
+                                                if(area < 0) {
+                                                    Client.sendMessage(client, "There are no free instances.");
+                                                    break;
+                                                }
+                                                Client.teleport(client, InstancePool.getChunkX(area) << 3 | client.coordX & 0x3F,
+                                                                InstancePool.getChunkY(area) << 3 | client.coordY & 0x3F, client.coordZ);
+                                            } else if(command.equals("leave")) {
+                                                if(InstancePool.isPooled(client.coordX >> 3, client.coordY >> 3))
+                                                    Client.teleport(client, Entity.DEFAULT_X, Entity.DEFAULT_Y, 0);
+                                            }
                                             break;
                                             
                                         /* Walking */
                                         case 98:
                                         case 164:
                                         case 248:
+                                            client.isBankOpen = false;
                                             int firstX = buffer.getUwordLe128();
                                             buffer.offset = buffer.payload.length - 3 - (opcode == 248 ? 14 : 0);
                                             int firstY = buffer.getUwordLe();
@@ -635,7 +1201,18 @@ public final class Main implements Runnable {
                                             buffer.offset = 2;
                                             while(amountSteps-- > 0) {
                                                 client.stepQueue[writePosition++] = ((buffer.getByte() + firstX) << 15) | (buffer.getByte() + firstY);
-                                            }                                    
+                                            }
+                                            int destination = client.stepQueue[writePosition - 1];
+                                            if(collisionMap.isBlocked(destination >> 15 & 0x7FFF, destination & 0x7FFF, client.coordZ)) {
+                                                client.stepQueue[client.walkingQueue.length - 2] = 0;
+                                                break;
+                                            }
+                                            int baseX = client.updatedChunkX << 3;
+                                            int baseY = client.updatedChunkY << 3;
+                                            if(!pathFinder.isValid(client.coordX, client.coordY, client.coordZ, client.stepQueue, writePosition, baseX, baseY)) {
+                                                int amountPoints = pathFinder.find(client.coordX, client.coordY, client.coordZ, destination >> 15 & 0x7FFF, destination & 0x7FFF, baseX, baseY, client.stepQueue);
+                                                client.stepQueue[client.walkingQueue.length - 2] = amountPoints < 0 ? 0 : amountPoints;
+                                            }
                                             break;
                                         
                                         /* Idle logout */
@@ -649,33 +1226,40 @@ public final class Main implements Runnable {
                                             int itemId = buffer.getUword128();
                                             int widgetId = buffer.getUword();
                                             int slot = buffer.getUword128();
-                                            ListNode itemsNode = null;
-                                            if((itemsNode = client.widgetItems.get(widgetId)) == null)
+                                            ItemContainer container = (ItemContainer) client.widgetItems.get(widgetId);
+                                            if(container == null)
                                                 throw new RuntimeException();
-                                            Item[] items = ((ItemArray) itemsNode).items;
-                                            if(slot < 0 || slot >= items.length || items[slot] == null || items[slot].id != itemId)
+                                            if(slot < 0 || slot >= container.ids.length || container.ids[slot] < 0 || container.ids[slot] != itemId)
                                                 throw new RuntimeException(); 
-                                            int offset = 0;
-                                            while(true) {
-                                                if(offset++ >= MAXIMUM_GROUNDITEMS)
-                                                    break pswitch;
-                                                if(groundItems[itemListOffset] != null && !groundItems[itemListOffset].remove) {
-                                                    offset++;
-                                                    itemListOffset = (itemListOffset + 1) % MAXIMUM_GROUNDITEMS;
-                                                    continue;
-                                                } else
-                                                    break;
-                                            } 
+                                            Chunk chunk = chunkTable.get(client.coordX >> 3, client.coordY >> 3);
+                                            GroundItem stack = findStack(chunk, client.coordX, client.coordY, client.coordZ, container.ids[slot], client.localId.value);
+                                            if(stack != null && stack.amount + container.amounts[slot] <= 0xFFFF) {
+                                                int oldAmount = stack.amount;
+                                                stack.amount += container.amounts[slot];
+                                                if(client.itemIndex.get(stack.localId)) {
+                                                    Client.sendMapCoords(client, ((client.coordX >> 3) - client.updatedChunkX) << 3, ((client.coordY >> 3) - client.updatedChunkY) << 3);
+                                                    Client.sendGroundItemAmount(client, stack, oldAmount, true);
+                                                }
+                                                container.clear(slot);
+                                                break;
+                                            }
+                                            evictItems(chunk, client.coordX, client.coordY, client.coordZ);
+                                            int itemSlot = itemSlots.allocate();
+                                            if(itemSlot < 0) {
+                                                LOGGER.log(Level.WARNING, "Ground item table full, {0} items dropped!", ++amountDroppedItems);
+                                                break pswitch;
+                                            }
                                             GroundItem groundItem = new GroundItem();
-                                            groundItem.localId = itemListOffset;
+                                            groundItem.localId = itemSlot;
                                             groundItem.creatorId = client.localId.value;
+                                            groundItem.ownerName = Client.encodeBase37(client.username);
                                             groundItem.coordX = client.coordX;
                                             groundItem.coordY = client.coordY;
                                             groundItem.coordZ = client.coordZ;
                                             System.out.println("X: " + client.coordX + ", Y: " + client.coordY);
-                                            groundItem.id = items[slot].id;
-                                            groundItem.amount = items[slot].amount;
-                                            groundItem.referenceNode = new IntegerNode(itemListOffset);
+                                            groundItem.id = container.ids[slot];
+                                            groundItem.amount = container.amounts[slot];
+                                            groundItem.referenceNode = new IntegerNode(itemSlot);
                                             groundItem.referenceNode.parentNode = client.spawnedItems.parentNode;
                                             groundItem.referenceNode.childNode = client.spawnedItems;
                                             groundItem.referenceNode.parentNode.childNode = groundItem.referenceNode;
@@ -683,10 +1267,9 @@ public final class Main implements Runnable {
                                             groundItem.appearTime = System.currentTimeMillis() + 30000L;
                                             groundItem.destroyTime = groundItem.appearTime + 30000L;
                                             groundItem.updateRegion();
-                                            groundItems[itemListOffset] = groundItem;
-                                            itemListOffset = (itemListOffset + 1) % MAXIMUM_GROUNDITEMS;
-                                            items[slot] = null;
-                                            Client.sendUpdateWidgetItems(client, widgetId, items, new int[] { slot });
+                                            itemTimers.add(groundItem, groundItem.appearTime);
+                                            groundItems.put(itemSlot, groundItem);
+                                            container.clear(slot);
                                             break;
                                             
                                         /* Move option */
@@ -695,16 +1278,59 @@ public final class Main implements Runnable {
                                             int mode = buffer.getUbyte();
                                             int startSlot = buffer.getUwordLe128();
                                             int endSlot = buffer.getUwordLe();
-                                            itemsNode = null;
-                                            if((itemsNode = client.widgetItems.get(widgetId)) == null)
+                                            container = (ItemContainer) client.widgetItems.get(widgetId);
+                                            if(container == null)
+                                                throw new RuntimeException();
+                                            if(startSlot < 0 || startSlot >= container.ids.length || container.ids[startSlot] < 0 || 
+                                               endSlot < 0 || endSlot >= container.ids.length)
                                                 throw new RuntimeException();
-                                            items = ((ItemArray) itemsNode).items;
-                                            if(startSlot < 0 || startSlot >= items.length || items[startSlot] == null || 
-                                               endSlot < 0 || endSlot >= items.length)
+                                            if(mode == 1)
+                                                container.insert(startSlot, endSlot);
+                                            else
+                                                container.swap(startSlot, endSlot);
+                                            break;
+                                            
+                                        /* Close interface */
+                                        case 130:
+                                            client.isBankOpen = false;
+                                            break;
+                                            
+                                        /* Item options, the amount is one, five, ten or all */
+                                        case 145:
+                                        case 117:
+                                        case 43:
+                                        case 129:
+                                            int amount;
+                                            if(opcode == 145) {
+                                                widgetId = buffer.getUword128();
+                                                slot = buffer.getUword128();
+                                                itemId = buffer.getUword128();
+                                                amount = 1;
+                                            } else if(opcode == 117) {
+                                                widgetId = buffer.getUwordLe128();
+                                                itemId = buffer.getUwordLe128();
+                                                slot = buffer.getUwordLe();
+                                                amount = 5;
+                                            } else if(opcode == 43) {
+                                                widgetId = buffer.getUwordLe();
+                                                itemId = buffer.getUword128();
+                                                slot = buffer.getUword128();
+                                                amount = 10;
+                                            } else {
+                                                slot = buffer.getUword128();
+                                                widgetId = buffer.getUword();
+                                                itemId = buffer.getUword128();
+                                                amount = Integer.MAX_VALUE;
+                                            }
+                                            if(!client.isBankOpen || (widgetId != Client.BANK_WIDGET && widgetId != Client.BANK_INVENTORY_WIDGET))
+                                                break;
+                                            container = (ItemContainer) client.widgetItems.get(widgetId);
+                                            if(slot < 0 || slot >= container.ids.length || container.ids[slot] < 0 || container.ids[slot] != itemId)
                                                 throw new RuntimeException();
-                                            Item tempItem = items[startSlot];
-                                            items[startSlot] = items[endSlot];
-                                            items[endSlot] = tempItem;
+                                            if(widgetId == Client.BANK_WIDGET)
+                                                Client.withdrawItem(client, slot, amount);
+                                            else
+                                                Client.depositItem(client, slot, amount);
                                             break;
                                     }
                                 }
@@ -717,6 +1343,8 @@ public final class Main implements Runnable {
                         continue;
                     }
                 }           
+                processItemTimers(System.currentTimeMillis());
+                flushItemUpdates();
                 node = activeClientList;
                 while((node = node.childNode) != null) { 
                    if(!(node instanceof IntegerNode))
@@ -728,107 +1356,16 @@ public final class Main implements Runnable {
                        removeClient(position);
                        continue;
                    }
+                   if(client.state == 3 || client.state == 4 || client.state == 6) {
+                       workers[((client.coordX >> 6) * 31 + (client.coordY >> 6)) % workers.length].clients.add(position.value);
+                       continue;
+                   }
+                   if(client.state == 5) {
+                       resetClients.add(position.value);
+                       continue;
+                   }
                    try {
-                       switch(client.state) {
-                           
-                           /**
-                            * Initial connection state.
-                            */
-                           case 1:
-                               Client.sendMessage(client, "Welcome to RuneTekk.");
-                               Client.sendInfo(client, true);
-                               Client.sendWidgetItems(client, 3214, ((ItemArray) client.widgetItems.get((long) 3214)).items);
-                               Client.sendTabInterface(client, Client.INVENTORY_TAB, 3213);
-                               client.skillExperience[3] = 1154;
-                               client.skillHashes[3] = 10;
-                               for(int i = 0; i < Client.AMOUNT_SKILLS; i++)
-                                   Client.sendSkillUpdate(client, i);
-                               Client.sendTabInterface(client, Client.LEVELS_TAB, 3917);
-                               client.activeFlags |= 1 << 7;
-                               client.state = 2;
-                               break;
-                              
-                           /**
-                            * Initial loop state.
-                            */
-                           case 2:   
-                               Client.populateItems(client);
-                               if(client.activeFlags != 0)
-                                  Client.writeFlaggedUpdates(client, client.flagBuffer, client.activeFlags);
-                               client.updateSteps();
-                               client.updateMovement();
-                               client.updateRegion();
-                               client.state = 3;
-                               break;
-                            
-                           /**
-                            * Update state.
-                            */
-                           case 3:
-                               Client.populatePlayers(client);                                  
-                               client.state = 4;
-                               break;
-                             
-                           /**
-                            * Write update state.
-                            */
-                           case 4:
-                               Client.sendPlayerUpdate(client); 
-                               Client.processItems(client);
-                               client.state = 5;
-                               break;
-                               
-                           /** 
-                            * Reset state.
-                            */
-                           case 5:
-                               int amountData = client.lastUpdates[client.lastUpdates.length - 1] > client.lastUpdates[client.lastUpdates.length - 2] ? (Mob.MAXIMUM_POINTS - client.lastUpdates[client.lastUpdates.length - 2]) + client.lastUpdates[client.lastUpdates.length - 1] : client.lastUpdates[client.lastUpdates.length - 2] - client.lastUpdates[client.lastUpdates.length - 1];
-                               if(amountData > 0)
-                                   client.lastUpdates[client.lastUpdates.length - 1] = (client.lastUpdates[client.lastUpdates.length - 1] + 1) % Client.MAXIMUM_POINTS;
-                               client.activeFlags = 0;
-                               client.state = 6;
-                               break;
-                            
-                           /**
-                            * Idle state.
-                            */
-                           case 6:    
-                                   for(int i = 0; i < client.patchStates.length; i++) {
-                                       int[] patchStates = client.patchStates[i];
-                                       long[] timeStamps = client.patchTimestamps[i];
-                                       if(timeStamps != null && patchStates != null) {
-                                           for(int j = 0; j < patchStates.length; j++) {
-                                               boolean update = false;
-                                               int state = patchStates[j] & 0xFF;
-                                               if(state <= 0) {
-                                                   if(timeStamps[j] != 0L)
-                                                       timeStamps[j] = 0L;
-                                                   continue;
-                                               } else {
-                                                   if(state <= 3) {
-                                                       if(timeStamps[j] <= 0) {
-                                                           timeStamps[j] = System.currentTimeMillis() + 30000L;
-                                                           update = true;
-                                                       }
-                                                       if(timeStamps[j] < System.currentTimeMillis()) {
-                                                           patchStates[j] = (patchStates[j] & ~255) | --state;
-                                                           timeStamps[j] = System.currentTimeMillis() + 30000L;
-                                                           update = true;
-                                                       }
-                                                   }
-                                               }
-                                               if(update) {
-                                                   Client.sendConfig(client, farmingTypeConfigs[i][j], (patchStates[j] & 0xFF) << (j * 8));
-                                               }
-                                           }
-                                       }
-                                   }
-                                   if(client.hasWritten) {  
-                                       client.hasWritten = false;
-                                       client.state = 2;
-                                   }
-                                   break;
-                       }
+                       updateState(client);
                    } catch(Exception ex) {
                        LOGGER.log(Level.WARNING, "Client disconnected : ", ex);
                        removeClient(position);
@@ -836,6 +1373,46 @@ public final class Main implements Runnable {
                        continue;
                    }           
                 }
+                for(int i = 1; i < workers.length; i++)
+                    workers[i].execute();
+                workers[0].process();
+                for(int i = 1; i < workers.length; i++)
+                    workers[i].await();
+                for(int i = 0; i < workers.length; i++) {
+                    IndexList failedClients = workers[i].failedClients;
+                    for(int j = 0; j < failedClients.size; j++) {
+                        Client client = clientArray[failedClients.values[j]];
+                        if(client == null)
+                            continue;
+                        removeClient(client.localId);
+                        client.destroy();
+                    }
+                    failedClients.clear();
+                }
+                for(int i = 0; i < resetClients.size; i++) {
+                    Client client = clientArray[resetClients.values[i]];
+                    if(client != null)
+                        updateState(client);
+                }
+                resetClients.clear();
+                saveClosedClients();
+                node = activeClientList;
+                while((node = node.childNode) != null) {
+                    if(!(node instanceof IntegerNode))
+                        break;
+                    Client client = clientArray[((IntegerNode) node).value];
+                    if(client != null && client.journal != null)
+                        drainJournal(client);
+                }
+                if(nextCheckpoint < System.currentTimeMillis()) {
+                    nextCheckpoint = System.currentTimeMillis() + checkpointTime;
+                    checkpointJournal();
+                }
+                instancePool.sweep(System.currentTimeMillis());
+                if(snapshotWriter != null && nextSnapshot < System.currentTimeMillis()) {
+                    nextSnapshot = System.currentTimeMillis() + snapshotTime;
+                    snapshotWriter.submit(captureItems(System.currentTimeMillis()));
+                }
             }
             long curTime = -1L;
             if(nextGc < (curTime = System.currentTimeMillis())) {
@@ -845,21 +1422,215 @@ public final class Main implements Runnable {
         }
      }
      
+    /**
+     * Updates the current state of a client. The update, write update and idle
+     * states only write to the client being updated and read the rest of the
+     * world, so clients in those states are updated in parallel by the
+     * {@link TickWorker}s once the clients in the login and loop states
+     * have been updated. Clients in the reset state are updated after the
+     * workers have finished. The loop state stays serial as it writes what
+     * the parallel states of other clients read in the same cycle: the
+     * movement updates the coordinates and the last updates that the player
+     * updates are written from, the region update relinks the player lists
+     * of the chunks that are populated from and the map region that is sent
+     * fills the shared cache of chunk payloads.
+     * @param client The client to update.
+     */
+    static void updateState(Client client) {
+        switch(client.state) {
+            
+            /**
+             * Initial connection state.
+             */
+            case 1:
+                Client.sendMessage(client, "Welcome to RuneTekk.");
+                Client.sendInfo(client, true);
+                ItemContainer inventory = (ItemContainer) client.widgetItems.get((long) 3214);
+                Client.sendWidgetItems(client, inventory.widgetId, inventory);
+                inventory.isSent = true;
+                Client.sendTabInterface(client, Client.INVENTORY_TAB, 3213);
+                for(int i = 0; i < Client.AMOUNT_SKILLS; i++)
+                    Client.sendSkillUpdate(client, i);
+                Client.sendTabInterface(client, Client.LEVELS_TAB, 3917);
+                client.activeFlags |= 1 << 7;
+                client.state = 2;
+                break;
+               
+            /**
+             * Initial loop state.
+             */
+            case 2:   
+                Client.populateItems(client);
+                if(client.activeFlags != 0)
+                   Client.writeFlaggedUpdates(client, client.flagBuffer, client.activeFlags);
+                client.updateSteps();
+                client.updateMovement();
+                client.updateRegion();
+                client.state = 3;
+                break;
+             
+            /**
+             * Update state.
+             */
+            case 3:
+                Client.populatePlayers(client);                                  
+                client.state = 4;
+                break;
+              
+            /**
+             * Write update state.
+             */
+            case 4:
+                Client.sendPlayerUpdate(client); 
+                Client.processItems(client);
+                Client.sendContainerUpdates(client);
+                client.state = 5;
+                break;
+                
+            /** 
+             * Reset state.
+             */
+            case 5:
+                int amountData = client.lastUpdates[client.lastUpdates.length - 1] > client.lastUpdates[client.lastUpdates.length - 2] ? (Mob.MAXIMUM_POINTS - client.lastUpdates[client.lastUpdates.length - 2]) + client.lastUpdates[client.lastUpdates.length - 1] : client.lastUpdates[client.lastUpdates.length - 2] - client.lastUpdates[client.lastUpdates.length - 1];
+                if(amountData > 0)
+                    client.lastUpdates[client.lastUpdates.length - 1] = (client.lastUpdates[client.lastUpdates.length - 1] + 1) % Client.MAXIMUM_POINTS;
+                client.activeFlags = 0;
+                client.state = 6;
+                break;
+             
+            /**
+             * Idle state.
+             */
+            case 6:    
+                    for(int i = 0; i < client.patchStates.length; i++) {
+                        int[] patchStates = client.patchStates[i];
+                        long[] timeStamps = client.patchTimestamps[i];
+                        if(timeStamps != null && patchStates != null) {
+                            for(int j = 0; j < patchStates.length; j++) {
+                                boolean update = false;
+                                int state = patchStates[j] & 0xFF;
+                                if(state <= 0) {
+                                    if(timeStamps[j] != 0L)
+                                        timeStamps[j] = 0L;
+                                    continue;
+                                } else {
+                                    if(state <= 3) {
+                                        if(timeStamps[j] <= 0) {
+                                            timeStamps[j] = System.currentTimeMillis() + 30000L;
+                                            update = true;
+                                        }
+                                        if(timeStamps[j] < System.currentTimeMillis()) {
+                                            patchStates[j] = (patchStates[j] & ~255) | --state;
+                                            timeStamps[j] = System.currentTimeMillis() + 30000L;
+                                            update = true;
+                                        }
+                                    }
+                                }
+                                if(update) {
+                                    Client.sendConfig(client, farmingTypeConfigs[i][j], (patchStates[j] & 0xFF) << (j * 8));
+                                    client.journal.putPatch(i, j, patchStates[j], timeStamps[j]);
+                                }
+                            }
+                        }
+                    }
+                    if(client.hasWritten) {  
+                        client.hasWritten = false;
+                        client.state = 2;
+                    }
+                    break;
+        }
+    }
+    
      /**
-      * Removes a client from this handler.
+      * Removes a client from this handler. Clients are removed from the
+      * writer thread as well so the profile of the client is not touched
+      * here, the client is closed and its profile is saved by the main
+      * thread once the workers are done with it.
       * @param client The client to remove.
       */
      void removeClient(IntegerNode client) {
          synchronized(removedClientList) {             
+             Client removedClient = clientArray[client.value];
+             ListNode list = removedClientList;
+             if(removedClient != null) {
+                 closedClients[client.value] = removedClient;
+                 list = closedClientList;
+             }
              client.removeFromList();
-             client.parentNode = removedClientList.parentNode;
-             client.childNode = removedClientList;
+             client.parentNode = list.parentNode;
+             client.childNode = list;
              client.parentNode.childNode = client;
              client.childNode.parentNode = client;
              clientArray[client.value] = null;
          }
      }
+     
+    /**
+     * Saves the profiles of the closed clients and frees their ids. Called
+     * from the main thread while no worker is running.
+     */
+    void saveClosedClients() {
+        synchronized(removedClientList) {
+            ListNode node = closedClientList.childNode;
+            while(node instanceof IntegerNode) {
+                IntegerNode position = (IntegerNode) node;
+                node = node.childNode;
+                Client client = closedClients[position.value];
+                closedClients[position.value] = null;
+                if(client.nameKey != 0L && clientNames.get(client.nameKey, -1) == position.value)
+                    clientNames.remove(client.nameKey);
+                saveProfile(client);
+                position.removeFromList();
+                position.parentNode = removedClientList.parentNode;
+                position.childNode = removedClientList;
+                position.parentNode.childNode = position;
+                position.childNode.parentNode = position;
+            }
+        }
+    }
        
+    /**
+     * Queues the profile of a client to be saved. Only clients whose profile
+     * was loaded and decoded are saved so that a failed login never
+     * replaces a profile with the defaults. Only called from the main
+     * thread while no worker is running.
+     * @param client The client.
+     */
+    void saveProfile(Client client) {
+        if(client.state < 1 || client.state > 6)
+            return;
+        try {
+            client.journal.buffer.offset = 0;
+            long sequence = journalWriter.getSequence();
+            profileService.save(client.nameKey, PlayerProfile.encode(client, sequence), sequence);
+        } catch(Exception ex) {
+            LOGGER.log(Level.WARNING, "Exception thrown while encoding a profile : {0}", ex);
+        }
+    }
+    
+    /**
+     * Submits the journaled state changes of a client to the journal writer.
+     * @param client The client.
+     */
+    void drainJournal(Client client) {
+        if(client.journal.buffer.offset > 0) {
+            journalWriter.submit(client.nameKey, client.journal.buffer);
+            client.journal.buffer.offset = 0;
+        }
+    }
+    
+    /**
+     * Takes a journal checkpoint, the profile of every client is saved so
+     * that the journal written so far can be compacted away.
+     */
+    void checkpointJournal() {
+        for(int i = 0; i < clientArray.length; i++) {
+            if(clientArray[i] != null)
+                saveProfile(clientArray[i]);
+        }
+        journalWriter.checkpoint();
+    }
+    
     /**
      * Destroys this local application.
      */
@@ -875,8 +1646,21 @@ public final class Main implements Runnable {
                 } catch(InterruptedException ex) {
                 }
             }
+            for(int i = 1; i < workers.length; i++)
+                workers[i].destroy();
+            saveClosedClients();
+            if(snapshotWriter != null) {
+                snapshotWriter.submit(captureItems(System.currentTimeMillis()));
+                snapshotWriter.destroy();
+                snapshotWriter = null;
+            }
+            checkpointJournal();
+            journalWriter.destroy();
+            profileService.destroy();
             activeClientList = null;
             removedClientList = null;
+            closedClientList = null;
+            closedClients = null;
             clientArray = null;
             thread = null;
         }
@@ -1332,10 +2116,12 @@ public final class Main implements Runnable {
         } else if(args[0].equals("setup")) {
             FileIndex landscapeIndex = null;
             ArchivePackage versionPack = null;
+            ArchivePackage configPack = null;
             try {
                 landscapeIndex = new FileIndex(-1, new RandomAccessFile(serverProperties.getProperty("CACHEDIR") + serverProperties.getProperty("MAINFILE"), "r"), new RandomAccessFile(serverProperties.getProperty("CACHEDIR") + serverProperties.getProperty("L-INDEX"), "r"));
                 FileIndex index = new FileIndex(-1, new RandomAccessFile(serverProperties.getProperty("CACHEDIR") + serverProperties.getProperty("MAINFILE"), "r"), new RandomAccessFile(serverProperties.getProperty("CACHEDIR") + serverProperties.getProperty("C-INDEX"), "r"));
                 versionPack = new ArchivePackage(index.get(Integer.parseInt(serverProperties.getProperty("V-ID"))));
+                configPack = new ArchivePackage(index.get(Integer.parseInt(serverProperties.getProperty("C-ID"))));
                 index.destroy();              
             } catch(Exception ex) {
                 reportError("Exception thrown while loading the files for setup", ex);
@@ -1450,6 +2236,195 @@ public final class Main implements Runnable {
                 reportError("Exception thrown while dumping the region files", ex);
                 throw new RuntimeException();
             }
+            try {
+                ByteBuffer indexBuffer = new ByteBuffer(configPack.getArchive("loc.idx"));
+                ByteBuffer buffer = new ByteBuffer(configPack.getArchive("loc.dat"));
+                int amountObjects = indexBuffer.getUword();
+                int[] objectSizes = new int[amountObjects];
+                boolean[] objectSolid = new boolean[amountObjects];
+                boolean[] objectInteractive = new boolean[amountObjects];
+                int offset = 2;
+                for(int id = 0; id < amountObjects; id++) {
+                    buffer.offset = offset;
+                    offset += indexBuffer.getUword();
+                    int sizeX = 1;
+                    int sizeY = 1;
+                    boolean isSolid = true;
+                    int interactive = -1;
+                    boolean hasModels = false;
+                    boolean hasActions = false;
+                    int firstType = -1;
+                    for(;;) {
+                        int opcode = buffer.getUbyte();
+                        if(opcode == 0)
+                            break;
+                        if(opcode == 1) {
+                            int amountModels = buffer.getUbyte();
+                            if(amountModels > 0) {
+                                hasModels = true;
+                                buffer.offset += 2;
+                                firstType = buffer.getUbyte();
+                                buffer.offset += (amountModels - 1) * 3;
+                            }
+                        } else if(opcode == 2 || opcode == 3)
+                            buffer.getString();
+                        else if(opcode == 5) {
+                            int amountModels = buffer.getUbyte();
+                            if(amountModels > 0) {
+                                hasModels = true;
+                                firstType = -1;
+                                buffer.offset += amountModels * 2;
+                            }
+                        } else if(opcode == 14)
+                            sizeX = buffer.getUbyte();
+                        else if(opcode == 15)
+                            sizeY = buffer.getUbyte();
+                        else if(opcode == 17)
+                            isSolid = false;
+                        else if(opcode == 19)
+                            interactive = buffer.getUbyte();
+                        else if(opcode == 24 || opcode == 60 || (opcode >= 65 && opcode <= 68) || (opcode >= 70 && opcode <= 72))
+                            buffer.offset += 2;
+                        else if(opcode == 28 || opcode == 29 || opcode == 39 || opcode == 69 || opcode == 75)
+                            buffer.offset++;
+                        else if(opcode >= 30 && opcode < 39) {
+                            hasActions = true;
+                            buffer.getString();
+                        } else if(opcode == 40)
+                            buffer.offset += buffer.getUbyte() * 4;
+                        else if(opcode == 74)
+                            isSolid = false;
+                        else if(opcode == 77) {
+                            buffer.offset += 4;
+                            buffer.offset += (buffer.getUbyte() + 1) * 2;
+                        }
+                    }
+                    if(interactive == -1)
+                        objectInteractive[id] = hasActions || (hasModels && (firstType == -1 || firstType == 10));
+                    else
+                        objectInteractive[id] = interactive == 1;
+                    objectSizes[id] = sizeX << 8 | sizeY;
+                    objectSolid[id] = isSolid;
+                }
+                byte[] mapIndex = versionPack.getArchive("map_index");
+                byte[][] regions = new byte[256 * 256][];
+                for(int i = 0; i < mapIndex.length; i += 7)
+                    regions[((mapIndex[i] & 0xFF) << 8) | (mapIndex[i + 1] & 0xFF)] = new byte[CollisionMap.REGION_SIZE];
+                byte[][][] settings = new byte[4][64][64];
+                for(int i = 0; i < mapIndex.length; i += 7) {
+                    int hash = ((mapIndex[i] & 0xFF) << 8) | (mapIndex[i + 1] & 0xFF);
+                    int floorId = ((mapIndex[i + 2] & 0xFF) << 8) | (mapIndex[i + 3] & 0xFF);
+                    int objectMapId = ((mapIndex[i + 4] & 0xFF) << 8) | (mapIndex[i + 5] & 0xFF);
+                    int baseX = (hash >> 8) << 6;
+                    int baseY = (hash & 0xFF) << 6;
+                    buffer = new ByteBuffer(unpackGzip(landscapeIndex.get(floorId)));
+                    for(int z = 0; z < 4; z++) {
+                        for(int x = 0; x < 64; x++) {
+                            for(int y = 0; y < 64; y++) {
+                                settings[z][x][y] = 0;
+                                for(;;) {
+                                    int opcode = buffer.getUbyte();
+                                    if(opcode == 0)
+                                        break;
+                                    if(opcode == 1) {
+                                        buffer.offset++;
+                                        break;
+                                    }
+                                    if(opcode <= 49)
+                                        buffer.offset++;
+                                    else if(opcode <= 81)
+                                        settings[z][x][y] = (byte) (opcode - 49);
+                                }
+                            }
+                        }
+                    }
+                    for(int z = 0; z < 4; z++) {
+                        for(int x = 0; x < 64; x++) {
+                            for(int y = 0; y < 64; y++) {
+                                if((settings[z][x][y] & 1) == 0)
+                                    continue;
+                                int plane = (settings[1][x][y] & 2) != 0 ? z - 1 : z;
+                                if(plane >= 0)
+                                    CollisionMap.mark(regions, baseX + x, baseY + y, plane, CollisionMap.BLOCKED);
+                            }
+                        }
+                    }
+                    byte[] objectMap = landscapeIndex.get(objectMapId);
+                    if(objectMap == null)
+                        continue;
+                    buffer = new ByteBuffer(unpackGzip(objectMap));
+                    int id = -1;
+                    int idOffset;
+                    while((idOffset = buffer.getUsmart()) != 0) {
+                        id += idOffset;
+                        int position = 0;
+                        int positionOffset;
+                        while((positionOffset = buffer.getUsmart()) != 0) {
+                            position += positionOffset - 1;
+                            int localX = position >> 6 & 0x3F;
+                            int localY = position & 0x3F;
+                            int plane = position >> 12;
+                            int attributes = buffer.getUbyte();
+                            int type = attributes >> 2;
+                            int rotation = attributes & 3;
+                            if((settings[1][localX][localY] & 2) != 0)
+                                plane--;
+                            if(plane < 0 || id >= amountObjects || !objectSolid[id])
+                                continue;
+                            int x = baseX + localX;
+                            int y = baseY + localY;
+                            if(type == 0 || type == 2) {
+                                if(type == 0 ? rotation == 0 : rotation == 0 || rotation == 3)
+                                    CollisionMap.mark(regions, x, y, plane, CollisionMap.WEST_WALL);
+                                if(type == 0 ? rotation == 1 : rotation == 0 || rotation == 1)
+                                    CollisionMap.mark(regions, x, y + 1, plane, CollisionMap.SOUTH_WALL);
+                                if(type == 0 ? rotation == 2 : rotation == 1 || rotation == 2)
+                                    CollisionMap.mark(regions, x + 1, y, plane, CollisionMap.WEST_WALL);
+                                if(type == 0 ? rotation == 3 : rotation == 2 || rotation == 3)
+                                    CollisionMap.mark(regions, x, y, plane, CollisionMap.SOUTH_WALL);
+                            } else if(type == 9 || (type >= 10 && type <= 21)) {
+                                int sizeX = objectSizes[id] >> 8;
+                                int sizeY = objectSizes[id] & 0xFF;
+                                if(rotation == 1 || rotation == 3) {
+                                    int temp = sizeX;
+                                    sizeX = sizeY;
+                                    sizeY = temp;
+                                }
+                                for(int dx = 0; dx < sizeX; dx++) {
+                                    for(int dy = 0; dy < sizeY; dy++)
+                                        CollisionMap.mark(regions, x + dx, y + dy, plane, CollisionMap.BLOCKED);
+                                }
+                            } else if(type == 22 && objectInteractive[id])
+                                CollisionMap.mark(regions, x, y, plane, CollisionMap.BLOCKED);
+                        }
+                    }
+                }
+                DataOutputStream os = new DataOutputStream(new FileOutputStream(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("CFILE")));
+                offset = CollisionMap.TABLE_SIZE;
+                for(int i = 0; i < regions.length; i++) {
+                    if(regions[i] != null) {
+                        os.writeInt(offset);
+                        offset += CollisionMap.REGION_SIZE;
+                    } else
+                        os.writeInt(0);
+                }
+                for(int i = 0; i < regions.length; i++) {
+                    if(regions[i] != null)
+                        os.write(regions[i]);
+                }
+                os.close();
+            } catch(Exception ex) {
+                reportError("Exception thrown while dumping the collision file", ex);
+                throw new RuntimeException();
+            }
+            try {
+                DataOutputStream os = new DataOutputStream(new FileOutputStream(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("OFILE")));
+                ItemDefinitions.dump(new ByteBuffer(configPack.getArchive("obj.idx")), new ByteBuffer(configPack.getArchive("obj.dat")), os);
+                os.close();
+            } catch(Exception ex) {
+                reportError("Exception thrown while dumping the item definitions file", ex);
+                throw new RuntimeException();
+            }
             try {
                 ListNode nameList = new ListNode();
                 nameList.childNode = nameList;
@@ -1571,6 +2546,153 @@ public final class Main implements Runnable {
                 reportError("Exception thrown while dumping the farming file", ex);
                 throw new RuntimeException();
             }
+        } else if(args[0].equals("pbench")) {
+            try {
+                collisionMap = new CollisionMap(mapFile(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("CFILE")));
+            } catch(Exception ex) {
+                reportError("Exception thrown while mapping the collision file", ex);
+                throw new RuntimeException();
+            }
+            int amountPaths = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+            int centerX = args.length > 4 ? Integer.parseInt(args[3]) : 3222;
+            int centerY = args.length > 4 ? Integer.parseInt(args[4]) : 3218;
+            int baseX = ((centerX >> 3) - 6) << 3;
+            int baseY = ((centerY >> 3) - 6) << 3;
+            int[] requests = new int[amountPaths];
+            long seed = 0x5DEECE66DL;
+            for(int i = 0; i < amountPaths; i++) {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                int position = (int) (seed >>> 33);
+                requests[i] = (position & 0x7F) % PathFinder.SCENE_SIZE << 24 | (position >> 7 & 0x7F) % PathFinder.SCENE_SIZE << 16 |
+                              (position >> 14 & 0x7F) % PathFinder.SCENE_SIZE << 8 | (position >> 21 & 0x7F) % PathFinder.SCENE_SIZE;
+            }
+            PathFinder finder = new PathFinder();
+            int[] points = new int[Mob.MAXIMUM_POINTS];
+            for(int pass = 0; pass < 2; pass++) {
+                int amountFound = 0;
+                long startTime = System.nanoTime();
+                for(int i = 0; i < amountPaths; i++) {
+                    int request = requests[i];
+                    if(finder.find(baseX + (request >>> 24), baseY + (request >> 16 & 0xFF), 0, baseX + (request >> 8 & 0xFF), baseY + (request & 0xFF), baseX, baseY, points) >= 0)
+                        amountFound++;
+                }
+                long elapsed = System.nanoTime() - startTime;
+                LOGGER.log(Level.INFO, "Pass {0} : {1} paths, {2} found, {3} paths per second", new Object[]{ pass, amountPaths, amountFound, (long) (amountPaths / (elapsed / 1e9)) });
+            }
+        } else if(args[0].equals("ubench")) {
+            int amountClients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            int amountTicks = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+            int areaSize = args.length > 4 ? Integer.parseInt(args[4]) : 128;
+            int originX = 3222 - (areaSize >> 1);
+            int originY = 3218 - (areaSize >> 1);
+            chunkTable = new ChunkTable((originX >> 3) - 2, (originY >> 3) - 2, (originX + areaSize >> 3) + 2, (originY + areaSize >> 3) + 2);
+            for(int chunkX = (originX >> 3) - 2; chunkX <= (originX + areaSize >> 3) + 2; chunkX++) {
+                for(int chunkY = (originY >> 3) - 2; chunkY <= (originY + areaSize >> 3) + 2; chunkY++) {
+                    Chunk chunk = new Chunk();
+                    chunk.region = new Region();
+                    chunkTable.put(chunkX, chunkY, chunk);
+                }
+            }
+            clientArray = new Client[MAXIMUM_CLIENTS];
+            amountClients = Math.min(amountClients, MAXIMUM_CLIENTS);
+            long seed = 0x5DEECE66DL;
+            for(int i = 0; i < amountClients; i++) {
+                Client client = new Client();
+                client.localId = new IntegerNode(i);
+                client.username = "bench" + i;
+                client.isLowMemory = true;
+                client.outgoingCipher = new IsaacCipher(new int[4]);
+                /* A whole area of players is added at once so the buffer is larger than a connected one */
+                client.outgoingBuffer = new byte[Client.BUFFER_SIZE * 16];
+                client.flagBuffer = new ByteBuffer(122);
+                client.appearanceUpdates = new boolean[MAXIMUM_CLIENTS];
+                client.activePlayers = new IndexList(Client.PLAYER_UPDATES);
+                client.addedPlayers = new IndexList(Client.PLAYER_UPDATES);
+                client.playerIndex = new long[(MAXIMUM_CLIENTS + 63) >> 6];
+                client.appearanceStates = new int[12];
+                client.colorIds = new int[5];
+                client.animationIds = new int[7];
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                client.coordX = originX + (int) ((seed >>> 33) % areaSize);
+                client.coordY = originY + (int) ((seed >>> 17 & 0xFFFF) % areaSize);
+                client.updateRegion();
+                clientArray[i] = client;
+            }
+            for(int pass = 0; pass < 2; pass++) {
+                long populateTime = 0L;
+                long updateTime = 0L;
+                long amountBytes = 0L;
+                for(int tick = 0; tick < amountTicks; tick++) {
+                    long startTime = System.nanoTime();
+                    for(int i = 0; i < amountClients; i++)
+                        Client.populatePlayers(clientArray[i]);
+                    populateTime += System.nanoTime() - startTime;
+                    startTime = System.nanoTime();
+                    for(int i = 0; i < amountClients; i++) {
+                        Client client = clientArray[i];
+                        Client.sendPlayerUpdate(client);
+                        amountBytes += client.oWritePosition;
+                        client.oWritePosition = 0;
+                    }
+                    updateTime += System.nanoTime() - startTime;
+                    for(int i = 0; i < amountClients; i++) {
+                        Client client = clientArray[i];
+                        seed = seed * 6364136223846793005L + 1442695040888963407L;
+                        int step = (int) (seed >>> 60);
+                        if(step > 7)
+                            continue;
+                        int x = client.coordX + Client.WALK_DELTA[step][0];
+                        int y = client.coordY + Client.WALK_DELTA[step][1];
+                        if(x < originX || y < originY || x >= originX + areaSize || y >= originY + areaSize)
+                            continue;
+                        client.coordX = x;
+                        client.coordY = y;
+                        client.updateRegion();
+                    }
+                }
+                LOGGER.log(Level.INFO, "Pass {0} : {1} clients, {2} ns populate and {3} ns update per client tick, {4} bytes per client tick", 
+                           new Object[]{ pass, amountClients, populateTime / ((long) amountTicks * amountClients), 
+                                         updateTime / ((long) amountTicks * amountClients), amountBytes / ((long) amountTicks * amountClients) });
+            }
+        } else if(args[0].equals("bbench")) {
+            int amountWrites = args.length > 2 ? Integer.parseInt(args[2]) : 20000000;
+            int[] values = new int[4096];
+            int[] widths = new int[values.length];
+            long seed = 0x5DEECE66DL;
+            int amountBits = 0;
+            for(int i = 0; i < values.length; i++) {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                widths[i] = 1 + (int) ((seed >>> 33) % 16);
+                values[i] = (int) (seed >>> 17);
+                amountBits += widths[i];
+            }
+            ByteBuffer oldBuffer = new ByteBuffer(amountBits / 8 + 1);
+            ByteBuffer newBuffer = new ByteBuffer(amountBits / 8 + 1);
+            for(int pass = 0; pass < 2; pass++) {
+                long startTime = System.nanoTime();
+                for(int i = 0; i < amountWrites;) {
+                    oldBuffer.offset = 0;
+                    oldBuffer.initializeBitOffset();
+                    for(int j = 0; j < values.length && i < amountWrites; j++, i++)
+                        oldBuffer.putBits(values[j], widths[j]);
+                    oldBuffer.resetBitOffset();
+                }
+                long oldElapsed = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                for(int i = 0; i < amountWrites;) {
+                    newBuffer.offset = 0;
+                    BitWriter bitWriter = new BitWriter(newBuffer);
+                    for(int j = 0; j < values.length && i < amountWrites; j++, i++)
+                        bitWriter.putBits(values[j], widths[j]);
+                    bitWriter.flush();
+                }
+                long newElapsed = System.nanoTime() - startTime;
+                boolean isEqual = oldBuffer.offset == newBuffer.offset;
+                for(int i = 0; isEqual && i < oldBuffer.offset - 1; i++)
+                    isEqual = oldBuffer.payload[i] == newBuffer.payload[i];
+                LOGGER.log(Level.INFO, "Pass {0} : {1} writes, {2} ms with ByteBuffer and {3} ms with BitWriter, output equal : {4}",
+                           new Object[]{ pass, amountWrites, oldElapsed / 1000000L, newElapsed / 1000000L, isEqual });
+            }
         } else if(args[0].equals("server")) {
             int portOff = -1;
             try {
@@ -1579,41 +2701,98 @@ public final class Main implements Runnable {
                 reportError("Exception thrown while parsing the port offset", ex);
                 throw new RuntimeException();
             }
+            int amountWorkers = -1;
             try {
-                DataInputStream is = new DataInputStream(new FileInputStream(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("RFILE")));
-                loadRegions(is);
-                is.close();
+                amountWorkers = Integer.parseInt(serverProperties.getProperty("WORKERS", Integer.toString(Runtime.getRuntime().availableProcessors())));
+                if(amountWorkers < 1)
+                    amountWorkers = 1;
+            } catch(Exception ex) {
+                reportError("Exception thrown while parsing the amount of workers", ex);
+                throw new RuntimeException();
+            }
+            try {
+                maximumTileItems = Integer.parseInt(serverProperties.getProperty("TILE-ITEMS", "16"));
+                maximumChunkItems = Integer.parseInt(serverProperties.getProperty("CHUNK-ITEMS", "128"));
+            } catch(Exception ex) {
+                reportError("Exception thrown while parsing the ground item limits", ex);
+                throw new RuntimeException();
+            }
+            try {
+                if(serverProperties.getProperty("IFILE") != null)
+                    snapshotPath = serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("IFILE");
+                snapshotTime = Long.parseLong(serverProperties.getProperty("ITEM-SNAPSHOT-TIME", "60000"));
+            } catch(Exception ex) {
+                reportError("Exception thrown while parsing the ground item snapshot time", ex);
+                throw new RuntimeException();
+            }
+            profilePath = serverProperties.getProperty("PDIR", serverProperties.getProperty("OUTDIR") + "profiles/");
+            profileFile = serverProperties.getProperty("PFILE", "profiles");
+            try {
+                profileCapacity = Integer.parseInt(serverProperties.getProperty("PROFILE-CAPACITY", "262144"));
+            } catch(Exception ex) {
+                reportError("Exception thrown while parsing the profile capacity", ex);
+                throw new RuntimeException();
+            }
+            try {
+                checkpointTime = Long.parseLong(serverProperties.getProperty("JOURNAL-CHECKPOINT-TIME", "300000"));
+            } catch(Exception ex) {
+                reportError("Exception thrown while parsing the journal checkpoint time", ex);
+                throw new RuntimeException();
+            }
+            try {
+                loadRegions(mapFile(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("RFILE")));
             } catch(Exception ex) {
                 ex.printStackTrace();
                 reportError("Exception thrown while reading the regions file", ex);
                 throw new RuntimeException();
             }
+            String collisionPath = serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("CFILE");
+            if(new File(collisionPath).exists()) {
+                try {
+                    collisionMap = new CollisionMap(mapFile(collisionPath));
+                } catch(Exception ex) {
+                    reportError("Exception thrown while mapping the collision file", ex);
+                    throw new RuntimeException();
+                }
+            } else {
+                LOGGER.log(Level.WARNING, "Collision file {0} not found, every tile can be walked on!", collisionPath);
+                collisionMap = new CollisionMap(null);
+            }
+            String definitionsPath = serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("OFILE");
+            if(new File(definitionsPath).exists()) {
+                try {
+                    itemDefinitions = new ItemDefinitions(mapFile(definitionsPath));
+                } catch(Exception ex) {
+                    reportError("Exception thrown while reading the item definitions file", ex);
+                    throw new RuntimeException();
+                }
+            } else {
+                LOGGER.log(Level.WARNING, "Item definitions file {0} not found, no item stacks!", definitionsPath);
+                itemDefinitions = new ItemDefinitions();
+            }
             try {
-                DataInputStream is = new DataInputStream(new FileInputStream(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("MFILE")));
-                loadMusics(is);
-                is.close();
+                loadMusics(mapFile(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("MFILE")));
             } catch(Exception ex) {
                 reportError("Exception thrown while reading the musics file", ex);
                 throw new RuntimeException();
             }
             try {
-                DataInputStream is = new DataInputStream(new FileInputStream(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("FFILE")));
-                loadFarming(is);
-                is.close();
+                loadFarming(mapFile(serverProperties.getProperty("OUTDIR") + serverProperties.getProperty("FFILE")));
             } catch(Exception ex) {
                 reportError("Exception thrown while reading the farming file", ex);
                 throw new RuntimeException();
             }
             serverProperties = null;
-            main = new Main(portOff);
+            main = new Main(portOff, amountWorkers);
         }
     }  
     
     /**
      * Prevent external construction;
      * @param portOff The port offset to initialize this server on.
+     * @param amountWorkers The amount of client shards to update in parallel.
      */
-    private Main(int portOff) {
+    private Main(int portOff, int amountWorkers) {
         try {
             activeClientList = new ListNode();
             activeClientList.parentNode = activeClientList;
@@ -1621,14 +2800,38 @@ public final class Main implements Runnable {
             removedClientList = new ListNode();
             removedClientList.parentNode = removedClientList;
             removedClientList.childNode = removedClientList;
+            closedClientList = new ListNode();
+            closedClientList.parentNode = closedClientList;
+            closedClientList.childNode = closedClientList;
+            closedClients = new Client[MAXIMUM_CLIENTS];
             clientArray = new Client[MAXIMUM_CLIENTS];
-            groundItems = new GroundItem[MAXIMUM_GROUNDITEMS];
+            clientNames = new IntHashTable(MAXIMUM_CLIENTS);
+            groundItems = new GroundItemStore(MAXIMUM_GROUNDITEMS);
+            itemSlots = new SlotAllocator(GroundItemStore.SEGMENT_SIZE, MAXIMUM_GROUNDITEMS);
+            restoredItems = new HashTable(64);
+            pathFinder = new PathFinder();
+            if(snapshotPath != null) {
+                if(new File(snapshotPath).exists())
+                    loadItems(mapFile(snapshotPath), System.currentTimeMillis());
+                snapshotWriter = new ItemSnapshotWriter(snapshotPath);
+                nextSnapshot = System.currentTimeMillis() + snapshotTime;
+            }
+            ProfileStore profileStore = new ProfileStore(profilePath + profileFile, profileCapacity);
+            profileService = new ProfileService(profileStore);
+            journalWriter = new JournalWriter(profilePath, profileService);
+            nextCheckpoint = System.currentTimeMillis() + checkpointTime;
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    destroy();
+                }
+            });
             nextGc = System.currentTimeMillis() + GC_TIME;
             serverSocket = new ServerSocket();
             serverSocket.setSoTimeout(2);
             serverSocket.setReceiveBufferSize(Client.BUFFER_SIZE);
             serverSocket.bind(new InetSocketAddress(43594 + portOff));
-            initialize();
+            initialize(amountWorkers);
         } catch(Exception ex) {
             LOGGER.log(Level.SEVERE, "Exception thrown while initializing : {0}", ex);
             throw new RuntimeException();
@@ -1641,7 +2844,7 @@ public final class Main implements Runnable {
             -3, -3, -3, -3,  8, -3, -3, -3, -3, -3,
             -3, -3, -3, -3, -3, -3, -3, -3, -3, -3,
             -3, -3, -3, -3, -3, -3,  4, -3, -3, -3,
-            -3, -3, -3, -3, -3, -3, -3, -3, -3, -3,          
+            -3, -3, -3,  6, -3, -3, -3, -3, -3, -3,          
             -3, -3, -3, -3, -3, -3, -3, -3, -3, -3,
             
             -3, -3, -3, -3, -3, -3, -3, -3, -3, -3,        
@@ -1650,10 +2853,10 @@ public final class Main implements Runnable {
             -3, -3, -3, -3, -3, -3, -3, -3, -1, -3,           
             -3, -3, -3, -1, -3, -3, -3, -3, -3, -3,
             
-            -3, -3, -3, -3, -3, -3, -3, -3, -3, -3,
-            -3,  0, -3, -3, -3, -3, -3, -3, -3, -3,
-            -3, -3,  6, -3, -3, -3, -3, -3, -3, -3,
-            -3, -3, -3, -3, -3, -3, -3, -3, -3, -3,           
+            -3, -3, -3, -3, -3, -3, -3,  6, -3, -3,
+            -3,  0, -3, -3, -3, -3, -3, -3, -3,  6,
+             0, -3,  6, -3, -3, -3, -3, -3, -3, -3,
+            -3, -3, -3, -3, -3,  6, -3, -3, -3, -3,           
             -3, -3, -3, -3, -3, -3, -3, -3, -3, -3,
             
             -3, -3, -3, -3, -1, -3, -3, -3, -3, -3,
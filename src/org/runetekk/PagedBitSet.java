@@ -0,0 +1,58 @@
+package org.runetekk;
+
+/**
+ * PagedBitSet.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class PagedBitSet {
+
+    /**
+     * The amount of bits in a page.
+     */
+    public static final int PAGE_SIZE = 4096;
+
+    /**
+     * The pages of bits, null until a bit in the page is first set.
+     */
+    private long[][] pages;
+
+    /**
+     * Checks if a bit is set.
+     * @param index The index of the bit.
+     * @return If the bit is set.
+     */
+    boolean get(int index) {
+        long[] page = pages[index / PAGE_SIZE];
+        return page != null && (page[(index % PAGE_SIZE) >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * Sets a bit.
+     * @param index The index of the bit.
+     */
+    void set(int index) {
+        long[] page = pages[index / PAGE_SIZE];
+        if(page == null)
+            page = pages[index / PAGE_SIZE] = new long[PAGE_SIZE >> 6];
+        page[(index % PAGE_SIZE) >> 6] |= 1L << (index & 63);
+    }
+
+    /**
+     * Clears a bit.
+     * @param index The index of the bit.
+     */
+    void clear(int index) {
+        long[] page = pages[index / PAGE_SIZE];
+        if(page != null)
+            page[(index % PAGE_SIZE) >> 6] &= ~(1L << (index & 63));
+    }
+
+    /**
+     * Constructs a new {@link PagedBitSet};
+     * @param capacity The amount of bits in the set.
+     */
+    PagedBitSet(int capacity) {
+        pages = new long[(capacity + PAGE_SIZE - 1) / PAGE_SIZE][];
+    }
+}
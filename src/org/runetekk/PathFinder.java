@@ -0,0 +1,252 @@
+package org.runetekk;
+
+/**
+ * PathFinder.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class PathFinder {
+
+    /**
+     * The width and height in tiles of the scene that a path is searched in.
+     */
+    public static final int SCENE_SIZE = 104;
+
+    /**
+     * The width and height of the copied flags, one more than the scene so
+     * that the walls on the far edges of the scene can be read.
+     */
+    private static final int FLAGS_SIZE = SCENE_SIZE + 1;
+
+    /**
+     * The order that the walking directions are searched in, straight
+     * directions first so that paths prefer them on ties.
+     */
+    private static final int[] DIRECTIONS = { 3, 4, 6, 1, 5, 7, 0, 2 };
+
+    /**
+     * The search generation that each tile was last visited during.
+     */
+    private int[] visited;
+
+    /**
+     * The walking direction that each visited tile was reached with.
+     */
+    private int[] via;
+
+    /**
+     * The queue of tiles to search, reused to collect the turn points
+     * of the found path.
+     */
+    private int[] queue;
+
+    /**
+     * The current search generation.
+     */
+    private int generation;
+
+    /**
+     * The collision flags of the scene that was last searched.
+     */
+    private byte[] flags;
+
+    /**
+     * The x coordinate of the scene origin that the flags were copied from.
+     */
+    private int sceneX;
+
+    /**
+     * The y coordinate of the scene origin that the flags were copied from.
+     */
+    private int sceneY;
+
+    /**
+     * The plane that the flags were copied from.
+     */
+    private int sceneZ;
+
+    /**
+     * Copies the collision flags of a scene so that a search does not need
+     * to look up the region of every tile it visits. The flags are kept
+     * while the searches stay in the same scene.
+     * @param baseX The x coordinate of the scene origin.
+     * @param baseY The y coordinate of the scene origin.
+     * @param z The plane of the scene.
+     */
+    private void loadScene(int baseX, int baseY, int z) {
+        if(baseX == sceneX && baseY == sceneY && z == sceneZ)
+            return;
+        for(int x = 0; x < FLAGS_SIZE; x++) {
+            for(int y = 0; y < FLAGS_SIZE; y++)
+                flags[x * FLAGS_SIZE + y] = (byte) Main.collisionMap.getFlags(baseX + x, baseY + y, z);
+        }
+        sceneX = baseX;
+        sceneY = baseY;
+        sceneZ = z;
+    }
+
+    /**
+     * Checks if a step can be taken between two tiles of the copied scene,
+     * the same way as {@link CollisionMap#canMove}.
+     * @param x The scene x coordinate of the tile.
+     * @param y The scene y coordinate of the tile.
+     * @param dx The x delta of the step.
+     * @param dy The y delta of the step.
+     * @return If the step can be taken.
+     */
+    private boolean canMove(int x, int y, int dx, int dy) {
+        if((flags[(x + dx) * FLAGS_SIZE + y + dy] & CollisionMap.BLOCKED) != 0)
+            return false;
+        if(dx != 0 && dy != 0)
+            return canStep(x, y, dx, 0) && canStep(x, y, 0, dy) &&
+                   canStep(x + dx, y, 0, dy) && canStep(x, y + dy, dx, 0);
+        return canStep(x, y, dx, dy);
+    }
+
+    /**
+     * Checks if a straight step can be taken between two tiles of the
+     * copied scene.
+     * @param x The scene x coordinate of the tile.
+     * @param y The scene y coordinate of the tile.
+     * @param dx The x delta of the step.
+     * @param dy The y delta of the step.
+     * @return If the step can be taken.
+     */
+    private boolean canStep(int x, int y, int dx, int dy) {
+        if((flags[(x + dx) * FLAGS_SIZE + y + dy] & CollisionMap.BLOCKED) != 0)
+            return false;
+        if(dx < 0)
+            return (flags[x * FLAGS_SIZE + y] & CollisionMap.WEST_WALL) == 0;
+        if(dx > 0)
+            return (flags[(x + 1) * FLAGS_SIZE + y] & CollisionMap.WEST_WALL) == 0;
+        if(dy < 0)
+            return (flags[x * FLAGS_SIZE + y] & CollisionMap.SOUTH_WALL) == 0;
+        if(dy > 0)
+            return (flags[x * FLAGS_SIZE + y + 1] & CollisionMap.SOUTH_WALL) == 0;
+        return true;
+    }
+
+    /**
+     * Checks if every step between a list of points can be walked. The
+     * points are walked the same way that {@link Mob#updateSteps()} does.
+     * @param x The x coordinate to start from.
+     * @param y The y coordinate to start from.
+     * @param z The plane to walk on.
+     * @param points The points in the form x << 15 | y.
+     * @param amountPoints The amount of points.
+     * @param baseX The x coordinate of the scene origin.
+     * @param baseY The y coordinate of the scene origin.
+     * @return If the points can be walked and are all in the scene.
+     */
+    boolean isValid(int x, int y, int z, int[] points, int amountPoints, int baseX, int baseY) {
+        for(int i = 0; i < amountPoints; i++) {
+            int pointX = points[i] >> 15 & 0x7FFF;
+            int pointY = points[i] & 0x7FFF;
+            if(pointX < baseX || pointY < baseY || pointX >= baseX + SCENE_SIZE || pointY >= baseY + SCENE_SIZE)
+                return false;
+            while(x != pointX || y != pointY) {
+                int dx = pointX > x ? 1 : pointX < x ? -1 : 0;
+                int dy = pointY > y ? 1 : pointY < y ? -1 : 0;
+                if(!Main.collisionMap.canMove(x, y, z, dx, dy))
+                    return false;
+                x += dx;
+                y += dy;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the shortest path between two tiles of a scene. The path is
+     * written as the points where it turns, ending with the destination.
+     * @param srcX The x coordinate to start from.
+     * @param srcY The y coordinate to start from.
+     * @param z The plane to walk on.
+     * @param dstX The x coordinate of the destination.
+     * @param dstY The y coordinate of the destination.
+     * @param baseX The x coordinate of the scene origin.
+     * @param baseY The y coordinate of the scene origin.
+     * @param points The array to write the points to in the form x << 15 | y,
+     *               at most {@link Mob#MAXIMUM_POINTS} points are written.
+     * @return The amount of points written or -1 if there is no path.
+     */
+    int find(int srcX, int srcY, int z, int dstX, int dstY, int baseX, int baseY, int[] points) {
+        srcX -= baseX;
+        srcY -= baseY;
+        dstX -= baseX;
+        dstY -= baseY;
+        if(srcX < 0 || srcY < 0 || srcX >= SCENE_SIZE || srcY >= SCENE_SIZE ||
+           dstX < 0 || dstY < 0 || dstX >= SCENE_SIZE || dstY >= SCENE_SIZE)
+            return -1;
+        loadScene(baseX, baseY, z);
+        if(++generation == 0) {
+            for(int i = 0; i < visited.length; i++)
+                visited[i] = 0;
+            generation = 1;
+        }
+        int source = srcX * SCENE_SIZE + srcY;
+        int destination = dstX * SCENE_SIZE + dstY;
+        visited[source] = generation;
+        queue[0] = source;
+        int readPosition = 0;
+        int writePosition = 1;
+        boolean isFound = source == destination;
+        while(!isFound && readPosition < writePosition) {
+            int tile = queue[readPosition++];
+            int x = tile / SCENE_SIZE;
+            int y = tile - x * SCENE_SIZE;
+            for(int i = 0; i < DIRECTIONS.length; i++) {
+                int direction = DIRECTIONS[i];
+                int dx = Client.WALK_DELTA[direction][0];
+                int dy = Client.WALK_DELTA[direction][1];
+                int nextX = x + dx;
+                int nextY = y + dy;
+                if(nextX < 0 || nextY < 0 || nextX >= SCENE_SIZE || nextY >= SCENE_SIZE)
+                    continue;
+                int next = nextX * SCENE_SIZE + nextY;
+                if(visited[next] == generation)
+                    continue;
+                if(!canMove(x, y, dx, dy))
+                    continue;
+                visited[next] = generation;
+                via[next] = direction;
+                queue[writePosition++] = next;
+                if(next == destination) {
+                    isFound = true;
+                    break;
+                }
+            }
+        }
+        if(!isFound)
+            return -1;
+        int amountTurns = 0;
+        int lastDirection = -1;
+        for(int tile = destination; tile != source;) {
+            int direction = via[tile];
+            if(direction != lastDirection) {
+                queue[amountTurns++] = tile;
+                lastDirection = direction;
+            }
+            tile -= Client.WALK_DELTA[direction][0] * SCENE_SIZE + Client.WALK_DELTA[direction][1];
+        }
+        int amountPoints = amountTurns < Mob.MAXIMUM_POINTS ? amountTurns : Mob.MAXIMUM_POINTS;
+        for(int i = 0; i < amountPoints; i++) {
+            int tile = queue[amountTurns - 1 - i];
+            int x = tile / SCENE_SIZE;
+            points[i] = (baseX + x) << 15 | (baseY + tile - x * SCENE_SIZE);
+        }
+        return amountPoints;
+    }
+
+    /**
+     * Constructs a new {@link PathFinder}; A path finder may only be used by
+     * one thread at a time.
+     */
+    PathFinder() {
+        visited = new int[SCENE_SIZE * SCENE_SIZE];
+        via = new int[SCENE_SIZE * SCENE_SIZE];
+        queue = new int[SCENE_SIZE * SCENE_SIZE];
+        flags = new byte[FLAGS_SIZE * FLAGS_SIZE];
+        sceneZ = -1;
+    }
+}
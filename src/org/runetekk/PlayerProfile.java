@@ -0,0 +1,181 @@
+package org.runetekk;
+
+/**
+ * PlayerProfile.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class PlayerProfile {
+
+    /**
+     * The version of the profile format.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Gets the item containers of a client that are saved in the profile,
+     * in the order that they are saved.
+     * @param client The client.
+     * @return The item containers.
+     */
+    private static ItemContainer[] getContainers(Client client) {
+        return new ItemContainer[] {
+            (ItemContainer) client.widgetItems.get(3214),
+            (ItemContainer) client.widgetItems.get(Client.BANK_WIDGET)
+        };
+    }
+
+    /**
+     * Encodes the profile of a client. Only called from the thread that
+     * updates the client.
+     * @param client The client to encode the profile of.
+     * @param sequence The sequence of the last journal block that the
+     *                 profile includes.
+     * @return The encoded profile.
+     */
+    static byte[] encode(Client client, long sequence) {
+        ItemContainer[] containers = getContainers(client);
+        int size = 17 + 1 + client.skillExperience.length * 8 + 1 + client.appearanceStates.length * 2 +
+                   1 + client.colorIds.length + 2 + client.activeMusic.length + 1;
+        for(int i = 0; i < client.patchStates.length; i++)
+            size += 1 + (client.patchStates[i] != null ? client.patchStates[i].length * 12 : 0);
+        for(int i = 0; i < containers.length; i++)
+            size += 2 + containers[i].ids.length * 8;
+        ByteBuffer buffer = new ByteBuffer(size);
+        buffer.putWord(VERSION);
+        buffer.putQword(sequence);
+        buffer.putWord(client.coordX);
+        buffer.putWord(client.coordY);
+        buffer.putByte(client.coordZ);
+        buffer.putByte(client.skillExperience.length);
+        for(int i = 0; i < client.skillExperience.length; i++) {
+            buffer.putDword(client.skillExperience[i]);
+            buffer.putDword(client.skillHashes[i]);
+        }
+        buffer.putByte(client.appearanceStates.length);
+        for(int i = 0; i < client.appearanceStates.length; i++)
+            buffer.putWord(client.appearanceStates[i]);
+        buffer.putByte(client.colorIds.length);
+        for(int i = 0; i < client.colorIds.length; i++)
+            buffer.putByte(client.colorIds[i]);
+        buffer.putWord(client.activeMusic.length);
+        System.arraycopy(client.activeMusic, 0, buffer.payload, buffer.offset, client.activeMusic.length);
+        buffer.offset += client.activeMusic.length;
+        buffer.putByte(client.patchStates.length);
+        for(int i = 0; i < client.patchStates.length; i++) {
+            int[] patchStates = client.patchStates[i];
+            if(patchStates == null) {
+                buffer.putByte(0);
+                continue;
+            }
+            buffer.putByte(patchStates.length);
+            for(int j = 0; j < patchStates.length; j++) {
+                buffer.putDword(patchStates[j]);
+                buffer.putQword(client.patchTimestamps[i][j]);
+            }
+        }
+        for(int i = 0; i < containers.length; i++) {
+            ItemContainer container = containers[i];
+            int position = buffer.offset;
+            buffer.putWord(0);
+            int amountItems = 0;
+            for(int slot = 0; slot < container.ids.length; slot++) {
+                if(container.ids[slot] < 0)
+                    continue;
+                buffer.putWord(slot);
+                buffer.putWord(container.ids[slot]);
+                buffer.putDword(container.amounts[slot]);
+                amountItems++;
+            }
+            int oldOffset = buffer.offset;
+            buffer.offset = position;
+            buffer.putWord(amountItems);
+            buffer.offset = oldOffset;
+        }
+        byte[] profile = new byte[buffer.offset];
+        System.arraycopy(buffer.payload, 0, profile, 0, profile.length);
+        return profile;
+    }
+
+    /**
+     * Decodes a profile onto a client whose state was initialized with the
+     * defaults. Values that no longer fit the client, such as the unlocks of
+     * music that was removed, are skipped. A player saved inside an instance
+     * area is left at the default spawn because the area is not kept.
+     * @param client The client to decode the profile onto.
+     * @param profile The encoded profile.
+     * @return The sequence of the last journal block that the profile
+     *         includes.
+     */
+    static long decode(Client client, byte[] profile) {
+        ByteBuffer buffer = new ByteBuffer(profile);
+        int version = buffer.getUword();
+        if(version < 1 || version > VERSION)
+            throw new RuntimeException("Unsupported profile version " + version);
+        long sequence = version > 1 ? buffer.getQword() : 0L;
+        int coordX = buffer.getUword();
+        int coordY = buffer.getUword();
+        int coordZ = buffer.getUbyte();
+        if(Main.chunkTable.get(coordX >> 3, coordY >> 3) != null && !InstancePool.isPooled(coordX >> 3, coordY >> 3)) {
+            client.coordX = coordX;
+            client.coordY = coordY;
+            client.coordZ = coordZ;
+        }
+        int amountSkills = buffer.getUbyte();
+        for(int i = 0; i < amountSkills; i++) {
+            int experience = buffer.getDword();
+            int hash = buffer.getDword();
+            if(i < client.skillExperience.length) {
+                client.skillExperience[i] = experience;
+                client.skillHashes[i] = hash;
+            }
+        }
+        int amountStates = buffer.getUbyte();
+        for(int i = 0; i < amountStates; i++) {
+            int state = buffer.getUword();
+            if(i < client.appearanceStates.length)
+                client.appearanceStates[i] = state;
+        }
+        int amountColors = buffer.getUbyte();
+        for(int i = 0; i < amountColors; i++) {
+            int color = buffer.getUbyte();
+            if(i < client.colorIds.length)
+                client.colorIds[i] = color;
+        }
+        int musicSize = buffer.getUword();
+        System.arraycopy(profile, buffer.offset, client.activeMusic, 0, musicSize < client.activeMusic.length ? musicSize : client.activeMusic.length);
+        buffer.offset += musicSize;
+        int amountTypes = buffer.getUbyte();
+        for(int i = 0; i < amountTypes; i++) {
+            int amountPatches = buffer.getUbyte();
+            int[] patchStates = i < client.patchStates.length ? client.patchStates[i] : null;
+            for(int j = 0; j < amountPatches; j++) {
+                int state = buffer.getDword();
+                long timestamp = buffer.getQword();
+                if(patchStates != null && j < patchStates.length) {
+                    patchStates[j] = state;
+                    client.patchTimestamps[i][j] = timestamp;
+                }
+            }
+        }
+        ItemContainer[] containers = getContainers(client);
+        for(int i = 0; i < containers.length; i++) {
+            ItemContainer container = containers[i];
+            for(int slot = 0; slot < container.ids.length; slot++) {
+                if(container.ids[slot] >= 0)
+                    container.clear(slot);
+            }
+            int amountItems = buffer.getUword();
+            for(int j = 0; j < amountItems; j++) {
+                int slot = buffer.getUword();
+                int id = buffer.getUword();
+                int amount = buffer.getDword();
+                if(slot < container.ids.length && Main.itemDefinitions.isValid(id))
+                    container.set(slot, id, amount);
+            }
+            container.clearDirty();
+        }
+        client.updatedWidgets.clear();
+        return sequence;
+    }
+}
@@ -0,0 +1,317 @@
+package org.runetekk;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ProfileService.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class ProfileService implements Runnable {
+
+    /**
+     * The {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ProfileService.class.getName());
+
+    /**
+     * The {@link ProfileStore} that the profiles are stored in, only used
+     * by the local thread.
+     */
+    private ProfileStore store;
+
+    /**
+     * The clients waiting for their profile to be loaded.
+     */
+    private Client[] loadRequests;
+
+    /**
+     * The amount of clients waiting for their profile to be loaded.
+     */
+    private int amountLoads;
+
+    /**
+     * The profiles waiting to be saved keyed by the base 37 encoded name of
+     * their player. A newer profile replaces one that has not been saved yet.
+     */
+    private HashTable pendingSaves;
+
+    /**
+     * The profiles of the batch that is currently being saved.
+     */
+    private HashTable writingSaves;
+
+    /**
+     * The profiles of batches that failed to be saved keyed by the base 37
+     * encoded name of their player, they are saved again with the next
+     * batch.
+     */
+    private HashTable failedSaves;
+
+    /**
+     * The highest journal sequence that the profiles waiting to be saved
+     * include.
+     */
+    private long pendingSequence;
+
+    /**
+     * The highest journal sequence that the profiles of the batch that is
+     * currently being saved include.
+     */
+    private long writingSequence;
+
+    /**
+     * The highest journal sequence that a stored profile includes.
+     */
+    private long storedSequence;
+
+    /**
+     * The amount of save batches that were taken by the local thread.
+     */
+    private int takenBatches;
+
+    /**
+     * The amount of save batches that were written by the local thread.
+     */
+    private int writtenBatches;
+
+    /**
+     * The local thread.
+     */
+    private Thread thread;
+
+    /**
+     * The local thread is currently paused.
+     */
+    private boolean isPaused;
+
+    /**
+     * Initializes the local thread.
+     */
+    private void initialize() {
+        thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a client to have its profile loaded by the local thread.
+     * @param client The client.
+     */
+    void load(Client client) {
+        synchronized(this) {
+            if(amountLoads >= loadRequests.length) {
+                Client[] oldRequests = loadRequests;
+                loadRequests = new Client[oldRequests.length << 1];
+                System.arraycopy(oldRequests, 0, loadRequests, 0, amountLoads);
+            }
+            loadRequests[amountLoads++] = client;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Checks if the profile of a client was loaded.
+     * @param client The client.
+     * @return If the profile was loaded, {@link Client#profile} is then
+     *         the profile or null if the player has none.
+     */
+    boolean isLoaded(Client client) {
+        synchronized(this) {
+            return client.isProfileLoaded;
+        }
+    }
+
+    /**
+     * Queues a profile to be saved by the local thread.
+     * @param nameKey The base 37 encoded name of the player.
+     * @param profile The encoded profile.
+     * @param sequence The sequence of the last journal block that the
+     *                 profile includes.
+     */
+    void save(long nameKey, byte[] profile, long sequence) {
+        synchronized(this) {
+            pendingSaves.put(nameKey, profile);
+            if(sequence > pendingSequence)
+                pendingSequence = sequence;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gets the highest journal sequence that a stored profile includes.
+     * @return The sequence.
+     */
+    long getSequence() {
+        synchronized(this) {
+            return storedSequence;
+        }
+    }
+
+    /**
+     * Queues the profiles that failed to be saved to be saved again unless a
+     * newer profile is already waiting. The caller must hold the lock.
+     */
+    private void retryFailedSaves() {
+        long[] keys = failedSaves.keys;
+        Object[] values = failedSaves.values;
+        for(int i = 0; i < values.length; i++) {
+            if(values[i] != null && pendingSaves.get(keys[i]) == null)
+                pendingSaves.put(keys[i], values[i]);
+        }
+        failedSaves.clear();
+    }
+
+    /**
+     * Waits until every profile that was queued to be saved before this call
+     * was saved. The profiles that failed to be saved before are tried again.
+     * @return If every profile was saved, a profile that failed to be saved
+     *         is only in memory and its journal must be kept.
+     */
+    boolean flush() {
+        synchronized(this) {
+            retryFailedSaves();
+            notifyAll();
+            int batch = pendingSaves.size > 0 ? takenBatches + 1 : takenBatches;
+            while(writtenBatches < batch) {
+                try {
+                    wait();
+                } catch(InterruptedException ex) {}
+            }
+            return failedSaves.size == 0;
+        }
+    }
+
+    /**
+     * Reads a profile. A profile that is waiting to be saved is newer than
+     * the one on disk and is used instead.
+     * @param nameKey The base 37 encoded name of the player.
+     * @return The profile or null if the player has none.
+     * @throws IOException If the profile could not be read.
+     */
+    private byte[] read(long nameKey) throws IOException {
+        synchronized(this) {
+            byte[] profile = (byte[]) pendingSaves.get(nameKey);
+            if(profile == null)
+                profile = (byte[]) writingSaves.get(nameKey);
+            if(profile == null)
+                profile = (byte[]) failedSaves.get(nameKey);
+            if(profile != null)
+                return profile;
+        }
+        return store.get(nameKey);
+    }
+
+    /**
+     * Saves the current batch of profiles to the store.
+     * @return If every profile of the batch was saved.
+     */
+    private boolean write() {
+        try {
+            store.put(writingSaves, writingSequence);
+            return true;
+        } catch(IOException ex) {
+            LOGGER.log(Level.WARNING, "Exception thrown while saving the profiles : {0}", ex);
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        for(;;) {
+            Client[] requests;
+            int amountRequests;
+            boolean hasSaves;
+            synchronized(this) {
+                while(amountLoads == 0 && pendingSaves.size == 0 && !isPaused) {
+                    try {
+                        wait();
+                    } catch(InterruptedException ex) {}
+                }
+                if(amountLoads == 0 && pendingSaves.size == 0)
+                    break;
+                requests = new Client[amountLoads];
+                System.arraycopy(loadRequests, 0, requests, 0, amountLoads);
+                for(int i = 0; i < amountLoads; i++)
+                    loadRequests[i] = null;
+                amountRequests = amountLoads;
+                amountLoads = 0;
+                hasSaves = pendingSaves.size > 0;
+                if(hasSaves) {
+                    retryFailedSaves();
+                    HashTable batch = pendingSaves;
+                    pendingSaves = writingSaves;
+                    writingSaves = batch;
+                    writingSequence = pendingSequence;
+                    takenBatches++;
+                }
+            }
+            for(int i = 0; i < amountRequests; i++) {
+                Client client = requests[i];
+                byte[] profile = null;
+                boolean isFailed = false;
+                try {
+                    profile = read(client.nameKey);
+                } catch(IOException ex) {
+                    LOGGER.log(Level.WARNING, "Exception thrown while loading a profile : {0}", ex);
+                    isFailed = true;
+                }
+                synchronized(this) {
+                    client.profile = profile;
+                    client.isProfileFailed = isFailed;
+                    client.isProfileLoaded = true;
+                }
+            }
+            if(hasSaves) {
+                boolean isWritten = write();
+                synchronized(this) {
+                    if(!isWritten) {
+                        long[] keys = writingSaves.keys;
+                        Object[] values = writingSaves.values;
+                        for(int i = 0; i < values.length; i++) {
+                            if(values[i] != null && pendingSaves.get(keys[i]) == null)
+                                failedSaves.put(keys[i], values[i]);
+                        }
+                        if(writingSequence > pendingSequence)
+                            pendingSequence = writingSequence;
+                    }
+                    writingSaves.clear();
+                    storedSequence = store.getSequence();
+                    writtenBatches++;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Destroys this {@link ProfileService}. Every profile that is waiting to
+     * be saved is saved before the local thread exits.
+     */
+    void destroy() {
+        synchronized(this) {
+            isPaused = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch(InterruptedException ex) {}
+        store.close();
+    }
+
+    /**
+     * Constructs a new {@link ProfileService};
+     * @param store The store that the profiles are stored in.
+     */
+    ProfileService(ProfileStore store) {
+        this.store = store;
+        storedSequence = store.getSequence();
+        loadRequests = new Client[16];
+        pendingSaves = new HashTable(64);
+        writingSaves = new HashTable(64);
+        failedSaves = new HashTable(64);
+        initialize();
+    }
+}
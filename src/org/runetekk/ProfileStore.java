@@ -0,0 +1,530 @@
+package org.runetekk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ProfileStore.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class ProfileStore {
+
+    /**
+     * The {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(ProfileStore.class.getName());
+
+    /**
+     * The magic number at the start of the store file.
+     */
+    public static final int MAGIC = 0x50524F46;
+
+    /**
+     * The version of the store format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header, the magic number, version, amount of index
+     * slots, amount of entries, amount of pages, the first free page, the
+     * highest journal sequence that a stored profile includes and the first
+     * page of the index. The header is alone in the first page of the file.
+     */
+    public static final int HEADER_SIZE = 36;
+
+    /**
+     * The size of an index entry, the name key followed by the first page
+     * and the length of the profile.
+     */
+    public static final int ENTRY_SIZE = 16;
+
+    /**
+     * The size of a page, the next page in the chain followed by a part of
+     * a profile.
+     */
+    public static final int PAGE_SIZE = 1024;
+
+    /**
+     * The amount of pages the store file grows by once every page is used.
+     */
+    public static final int GROWTH_PAGES = 1024;
+
+    /**
+     * The fraction of the index slots that may be used.
+     */
+    public static final float LOAD_FACTOR = 0.75F;
+
+    /**
+     * The shift of the size of a mapped segment. A single mapping can not be
+     * larger than 2 gigabytes so the store file is mapped in segments, pages
+     * and index entries never cross the end of a segment.
+     */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * The size of a mapped segment.
+     */
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    /**
+     * The store file.
+     */
+    private RandomAccessFile file;
+
+    /**
+     * The mapped segments of the store file.
+     */
+    private MappedByteBuffer[] segments;
+
+    /**
+     * The amount of bytes of the store file that are mapped.
+     */
+    private long mappedSize;
+
+    /**
+     * The amount of index slots, a power of two.
+     */
+    private int amountSlots;
+
+    /**
+     * The amount of index slots that hold a profile.
+     */
+    private int amountEntries;
+
+    /**
+     * The amount of pages that were ever allocated.
+     */
+    private int amountPages;
+
+    /**
+     * The first page of the free page chain, -1 if there is none.
+     */
+    private int freePage;
+
+    /**
+     * The highest journal sequence that a stored profile includes.
+     */
+    private long sequence;
+
+    /**
+     * The first page of the index, the index takes up as many pages in a
+     * row as its slots need.
+     */
+    private int indexPage;
+
+    /**
+     * Gets the offset of a page in the store file.
+     * @param page The page.
+     * @return The offset.
+     */
+    private static long getPageOffset(int page) {
+        return (long) (page + 1) * PAGE_SIZE;
+    }
+
+    /**
+     * Gets the amount of pages that an index takes up.
+     * @param amountSlots The amount of index slots.
+     * @return The amount of pages.
+     */
+    private static int getIndexPages(int amountSlots) {
+        return (int) (((long) amountSlots * ENTRY_SIZE + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * Gets the offset of an index slot in the store file.
+     * @param slot The index slot.
+     * @return The offset.
+     */
+    private long getEntryOffset(int slot) {
+        return getPageOffset(indexPage) + (long) slot * ENTRY_SIZE;
+    }
+
+    /**
+     * Gets the mapped segment that holds an offset of the store file.
+     * @param offset The offset.
+     * @return The segment.
+     */
+    private MappedByteBuffer getSegment(long offset) {
+        return segments[(int) (offset >>> SEGMENT_SHIFT)];
+    }
+
+    /**
+     * Gets the position of an offset of the store file in its segment.
+     * @param offset The offset.
+     * @return The position.
+     */
+    private static int getPosition(long offset) {
+        return (int) (offset & SEGMENT_SIZE - 1);
+    }
+
+    /**
+     * Reads a dword from the store file.
+     * @param offset The offset.
+     * @return The dword.
+     */
+    private int getInt(long offset) {
+        return getSegment(offset).getInt(getPosition(offset));
+    }
+
+    /**
+     * Writes a dword to the store file.
+     * @param offset The offset.
+     * @param value The dword.
+     */
+    private void putInt(long offset, int value) {
+        getSegment(offset).putInt(getPosition(offset), value);
+    }
+
+    /**
+     * Reads a qword from the store file.
+     * @param offset The offset.
+     * @return The qword.
+     */
+    private long getLong(long offset) {
+        return getSegment(offset).getLong(getPosition(offset));
+    }
+
+    /**
+     * Writes a qword to the store file.
+     * @param offset The offset.
+     * @param value The qword.
+     */
+    private void putLong(long offset, long value) {
+        getSegment(offset).putLong(getPosition(offset), value);
+    }
+
+    /**
+     * Reads bytes from the store file, the bytes must be in one segment.
+     * @param offset The offset.
+     * @param data The array to read the bytes into.
+     * @param position The position in the array.
+     * @param length The amount of bytes.
+     */
+    private void read(long offset, byte[] data, int position, int length) {
+        MappedByteBuffer segment = getSegment(offset);
+        segment.position(getPosition(offset));
+        segment.get(data, position, length);
+    }
+
+    /**
+     * Writes bytes to the store file, the bytes must be in one segment.
+     * @param offset The offset.
+     * @param data The array to write the bytes from.
+     * @param position The position in the array.
+     * @param length The amount of bytes.
+     */
+    private void write(long offset, byte[] data, int position, int length) {
+        MappedByteBuffer segment = getSegment(offset);
+        segment.position(getPosition(offset));
+        segment.put(data, position, length);
+    }
+
+    /**
+     * Forces every change to the mapped segments to the store file.
+     */
+    private void force() {
+        for(int i = 0; i < segments.length; i++)
+            segments[i].force();
+    }
+
+    /**
+     * Finds the index slot of a profile.
+     * @param nameKey The base 37 encoded name of the player.
+     * @return The offset of the entry that holds the profile or of the empty
+     *         entry where it would be put.
+     */
+    private long findEntry(long nameKey) {
+        int mask = amountSlots - 1;
+        for(int slot = HashTable.getSlot(nameKey, mask);; slot = slot + 1 & mask) {
+            long offset = getEntryOffset(slot);
+            long key = getLong(offset);
+            if(key == 0L || key == nameKey)
+                return offset;
+        }
+    }
+
+    /**
+     * Gets a profile.
+     * @param nameKey The base 37 encoded name of the player.
+     * @return The profile or null if the player has none.
+     * @throws IOException If the page chain of the profile is broken.
+     */
+    byte[] get(long nameKey) throws IOException {
+        if(nameKey == 0L)
+            return null;
+        long offset = findEntry(nameKey);
+        if(getLong(offset) == 0L)
+            return null;
+        int page = getInt(offset + 8);
+        byte[] profile = new byte[getInt(offset + 12)];
+        int position = 0;
+        while(position < profile.length) {
+            if(page < 0 || page >= amountPages)
+                throw new IOException("Broken page chain for " + Long.toHexString(nameKey));
+            int length = Math.min(PAGE_SIZE - 4, profile.length - position);
+            read(getPageOffset(page) + 4, profile, position, length);
+            position += length;
+            page = getInt(getPageOffset(page));
+        }
+        return profile;
+    }
+
+    /**
+     * Allocates a page, the store file grows once every page is used.
+     * @return The page.
+     * @throws IOException If the store file could not grow.
+     */
+    private int allocatePage() throws IOException {
+        if(freePage >= 0) {
+            int page = freePage;
+            freePage = getInt(getPageOffset(page));
+            return page;
+        }
+        if(getPageOffset(amountPages + 1) > mappedSize)
+            map(getPageOffset(amountPages + GROWTH_PAGES));
+        return amountPages++;
+    }
+
+    /**
+     * Writes a profile to a new chain of pages.
+     * @param profile The profile.
+     * @return The first page of the chain, -1 if the profile is empty.
+     * @throws IOException If the pages could not be allocated.
+     */
+    private int writePages(byte[] profile) throws IOException {
+        int firstPage = -1;
+        int lastPage = -1;
+        for(int position = 0; position < profile.length; position += PAGE_SIZE - 4) {
+            int page = allocatePage();
+            putInt(getPageOffset(page), -1);
+            write(getPageOffset(page) + 4, profile, position, Math.min(PAGE_SIZE - 4, profile.length - position));
+            if(lastPage < 0)
+                firstPage = page;
+            else
+                putInt(getPageOffset(lastPage), page);
+            lastPage = page;
+        }
+        return firstPage;
+    }
+
+    /**
+     * Returns a chain of pages to the free pages.
+     * @param page The first page of the chain.
+     */
+    private void freePages(int page) {
+        while(page >= 0) {
+            int nextPage = getInt(getPageOffset(page));
+            putInt(getPageOffset(page), freePage);
+            freePage = page;
+            page = nextPage;
+        }
+    }
+
+    /**
+     * Writes the header to the store file.
+     */
+    private void writeHeader() {
+        putInt(0L, MAGIC);
+        putInt(4L, VERSION);
+        putInt(8L, amountSlots);
+        putInt(12L, amountEntries);
+        putInt(16L, amountPages);
+        putInt(20L, freePage);
+        putLong(24L, sequence);
+        putInt(32L, indexPage);
+    }
+
+    /**
+     * Gets the highest journal sequence that a stored profile includes, the
+     * journal never hands out a sequence below it again.
+     * @return The sequence.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Grows the index so that it can hold an amount of profiles. The new
+     * index is built in the pages after the last page and is synced before
+     * the header points at it, the pages of the old index are freed last.
+     * A crash while growing leaves the old index in use and can only leak
+     * pages.
+     * @param amountProfiles The amount of profiles that the index must hold.
+     * @throws IOException If the store file could not grow.
+     */
+    private void grow(int amountProfiles) throws IOException {
+        int newSlots = HashTable.getCapacity(amountProfiles << 1, LOAD_FACTOR);
+        int newIndexPage = amountPages;
+        int newIndexPages = getIndexPages(newSlots);
+        if(getPageOffset(newIndexPage + newIndexPages) > mappedSize)
+            map(getPageOffset(newIndexPage + newIndexPages + GROWTH_PAGES));
+        byte[] emptyPage = new byte[PAGE_SIZE];
+        for(int page = newIndexPage; page < newIndexPage + newIndexPages; page++)
+            write(getPageOffset(page), emptyPage, 0, PAGE_SIZE);
+        long newIndexOffset = getPageOffset(newIndexPage);
+        int mask = newSlots - 1;
+        for(int slot = 0; slot < amountSlots; slot++) {
+            long offset = getEntryOffset(slot);
+            long nameKey = getLong(offset);
+            if(nameKey == 0L)
+                continue;
+            int newSlot = HashTable.getSlot(nameKey, mask);
+            while(getLong(newIndexOffset + (long) newSlot * ENTRY_SIZE) != 0L)
+                newSlot = newSlot + 1 & mask;
+            putLong(newIndexOffset + (long) newSlot * ENTRY_SIZE, nameKey);
+            putLong(newIndexOffset + (long) newSlot * ENTRY_SIZE + 8, getLong(offset + 8));
+        }
+        force();
+        int oldIndexPage = indexPage;
+        int oldIndexPages = getIndexPages(amountSlots);
+        indexPage = newIndexPage;
+        amountSlots = newSlots;
+        amountPages = newIndexPage + newIndexPages;
+        writeHeader();
+        force();
+        for(int page = oldIndexPage; page < oldIndexPage + oldIndexPages; page++) {
+            putInt(getPageOffset(page), freePage);
+            freePage = page;
+        }
+        force();
+        writeHeader();
+        force();
+        LOGGER.log(Level.INFO, "Profile store index grown to {0} slots", amountSlots);
+    }
+
+    /**
+     * Saves a batch of profiles. The profiles are first written to new pages
+     * which are synced before the index entries are pointed at them, the old
+     * pages are freed last and are only put in the header once they are
+     * linked. A crash while saving can only leak pages, every entry always
+     * points at a whole profile. The index is grown first if the new
+     * profiles do not fit it.
+     * @param profiles The profiles keyed by the base 37 encoded name of
+     *                 their player.
+     * @param sequence The highest journal sequence that the profiles include.
+     * @throws IOException If the profiles could not be saved.
+     */
+    void put(HashTable profiles, long sequence) throws IOException {
+        long[] keys = profiles.keys;
+        Object[] values = profiles.values;
+        int amountNew = 0;
+        for(int i = 0; i < values.length; i++) {
+            if(values[i] != null && keys[i] != 0L && getLong(findEntry(keys[i])) == 0L)
+                amountNew++;
+        }
+        if(amountEntries + amountNew > amountSlots * LOAD_FACTOR)
+            grow(amountEntries + amountNew);
+        int[] firstPages = new int[values.length];
+        for(int i = 0; i < values.length; i++) {
+            if(values[i] != null)
+                firstPages[i] = writePages((byte[]) values[i]);
+        }
+        if(sequence > this.sequence)
+            this.sequence = sequence;
+        writeHeader();
+        force();
+        int amountFailed = 0;
+        for(int i = 0; i < values.length; i++) {
+            if(values[i] == null)
+                continue;
+            if(keys[i] == 0L) {
+                amountFailed++;
+                continue;
+            }
+            long offset = findEntry(keys[i]);
+            boolean isNew = getLong(offset) == 0L;
+            int oldPage = isNew ? -1 : getInt(offset + 8);
+            putLong(offset + 8, (long) firstPages[i] << 32 | ((byte[]) values[i]).length);
+            if(isNew) {
+                putLong(offset, keys[i]);
+                amountEntries++;
+            }
+            firstPages[i] = oldPage;
+        }
+        writeHeader();
+        force();
+        for(int i = 0; i < values.length; i++) {
+            if(values[i] != null)
+                freePages(firstPages[i]);
+        }
+        force();
+        writeHeader();
+        force();
+        if(amountFailed > 0)
+            throw new IOException("Failed to save " + amountFailed + " profiles without a name");
+    }
+
+    /**
+     * Maps the store file, growing it to a size first. The full segments
+     * that are already mapped are kept.
+     * @param size The size of the store file.
+     * @throws IOException If the store file could not be mapped.
+     */
+    private void map(long size) throws IOException {
+        if(file.length() < size)
+            file.setLength(size);
+        long length = file.length();
+        MappedByteBuffer[] oldSegments = segments;
+        segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+        int amountKept = 0;
+        if(oldSegments != null) {
+            for(; amountKept < oldSegments.length && oldSegments[amountKept].capacity() == SEGMENT_SIZE; amountKept++)
+                segments[amountKept] = oldSegments[amountKept];
+        }
+        for(int i = amountKept; i < segments.length; i++) {
+            long position = (long) i << SEGMENT_SHIFT;
+            segments[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, position, Math.min(SEGMENT_SIZE, length - position));
+        }
+        mappedSize = length;
+    }
+
+    /**
+     * Closes the store file.
+     */
+    void close() {
+        force();
+        try {
+            file.close();
+        } catch(IOException ex) {}
+    }
+
+    /**
+     * Constructs a new {@link ProfileStore}; A new store file is created
+     * if there is none.
+     * @param path The path of the store file.
+     * @param capacity The amount of profiles a new store file can hold
+     *                 before its index grows.
+     * @throws IOException If the store file could not be opened.
+     */
+    ProfileStore(String path, int capacity) throws IOException {
+        File parent = new File(path).getAbsoluteFile().getParentFile();
+        if(parent != null)
+            parent.mkdirs();
+        file = new RandomAccessFile(path, "rw");
+        if(file.length() == 0L) {
+            amountSlots = HashTable.getCapacity(capacity, LOAD_FACTOR);
+            indexPage = 0;
+            amountPages = getIndexPages(amountSlots);
+            freePage = -1;
+            map(getPageOffset(amountPages + GROWTH_PAGES));
+            writeHeader();
+            force();
+        } else {
+            map(0L);
+            if(getInt(0L) != MAGIC || getInt(4L) != VERSION)
+                throw new IOException("Invalid profile store " + path);
+            amountSlots = getInt(8L);
+            amountEntries = getInt(12L);
+            amountPages = getInt(16L);
+            freePage = getInt(20L);
+            sequence = getLong(24L);
+            indexPage = getInt(32L);
+        }
+    }
+}
@@ -7,11 +7,6 @@ package org.runetekk;
  */
 public final class Region {
     
-    /**
-     * The {@link Region} chunks.
-     */
-    Chunk[][] chunks;
-    
     /**
      * The song that will be played when a player enters this region.
      */
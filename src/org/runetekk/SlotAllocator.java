@@ -0,0 +1,86 @@
+package org.runetekk;
+
+/**
+ * SlotAllocator.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class SlotAllocator {
+
+    /**
+     * The queue of free slots. Released slots are added to the back of the
+     * queue so a slot is reused as late as possible.
+     */
+    private int[] freeSlots;
+
+    /**
+     * The position of the first free slot in the queue.
+     */
+    private int readPosition;
+
+    /**
+     * The amount of free slots in the queue.
+     */
+    int amountFree;
+
+    /**
+     * The amount of slots that have been added to the queue.
+     */
+    int capacity;
+
+    /**
+     * The most slots that will ever be added to the queue.
+     */
+    private int maximumCapacity;
+
+    /**
+     * Allocates a free slot.
+     * @return The slot or -1 if there are no free slots.
+     */
+    int allocate() {
+        if(amountFree < 1 && capacity < maximumCapacity)
+            grow();
+        if(amountFree < 1)
+            return -1;
+        int slot = freeSlots[readPosition];
+        readPosition = (readPosition + 1) % freeSlots.length;
+        amountFree--;
+        return slot;
+    }
+
+    /**
+     * Adds the next slots to the queue, doubling the capacity up to its
+     * maximum. Only called when the queue is empty.
+     */
+    private void grow() {
+        int newCapacity = capacity << 1 < maximumCapacity ? capacity << 1 : maximumCapacity;
+        freeSlots = new int[newCapacity];
+        for(int i = capacity; i < newCapacity; i++)
+            freeSlots[amountFree++] = i;
+        readPosition = 0;
+        capacity = newCapacity;
+    }
+
+    /**
+     * Releases a slot back into the queue.
+     * @param slot The slot to release.
+     */
+    void release(int slot) {
+        freeSlots[(readPosition + amountFree++) % freeSlots.length] = slot;
+    }
+
+    /**
+     * Constructs a new {@link SlotAllocator};
+     * @param capacity The initial amount of slots.
+     * @param maximumCapacity The maximum amount of slots.
+     */
+    SlotAllocator(int capacity, int maximumCapacity) {
+        capacity = capacity < 1 ? 1 : capacity;
+        freeSlots = new int[capacity];
+        for(int i = 0; i < capacity; i++)
+            freeSlots[i] = i;
+        amountFree = capacity;
+        this.capacity = capacity;
+        this.maximumCapacity = maximumCapacity;
+    }
+}
@@ -0,0 +1,163 @@
+package org.runetekk;
+
+/**
+ * StateJournal.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class StateJournal {
+
+    /**
+     * The record for an item that was put into a container slot.
+     */
+    public static final int RECORD_ITEM = 0;
+
+    /**
+     * The record for the experience of a skill.
+     */
+    public static final int RECORD_SKILL = 1;
+
+    /**
+     * The record for the state of a farming patch.
+     */
+    public static final int RECORD_PATCH = 2;
+
+    /**
+     * The record for a music track that was unlocked.
+     */
+    public static final int RECORD_MUSIC = 3;
+
+    /**
+     * The records that were appended since the journal was last drained.
+     */
+    ByteBuffer buffer;
+
+    /**
+     * Ensures that there is room for a record in the buffer.
+     * @param size The size of the record.
+     */
+    private void ensureCapacity(int size) {
+        if(buffer.offset + size <= buffer.payload.length)
+            return;
+        byte[] payload = new byte[Math.max(buffer.payload.length << 1, buffer.offset + size)];
+        System.arraycopy(buffer.payload, 0, payload, 0, buffer.offset);
+        buffer.payload = payload;
+    }
+
+    /**
+     * Appends the item in a container slot.
+     * @param widgetId The id of the widget of the container.
+     * @param slot The slot.
+     * @param id The item id, -1 if the slot was emptied.
+     * @param amount The item amount.
+     */
+    void putItem(int widgetId, int slot, int id, int amount) {
+        ensureCapacity(11);
+        buffer.putByte(RECORD_ITEM);
+        buffer.putWord(widgetId);
+        buffer.putWord(slot);
+        buffer.putWord(id + 1);
+        buffer.putDword(amount);
+    }
+
+    /**
+     * Appends the experience of a skill.
+     * @param id The skill id.
+     * @param experience The experience.
+     * @param hash The hash of the skill.
+     */
+    void putSkill(int id, int experience, int hash) {
+        ensureCapacity(10);
+        buffer.putByte(RECORD_SKILL);
+        buffer.putByte(id);
+        buffer.putDword(experience);
+        buffer.putDword(hash);
+    }
+
+    /**
+     * Appends the state of a farming patch.
+     * @param type The farming type of the patch.
+     * @param patch The patch.
+     * @param state The state of the patch.
+     * @param timestamp The time when the patch next changes.
+     */
+    void putPatch(int type, int patch, int state, long timestamp) {
+        ensureCapacity(15);
+        buffer.putByte(RECORD_PATCH);
+        buffer.putByte(type);
+        buffer.putByte(patch);
+        buffer.putDword(state);
+        buffer.putQword(timestamp);
+    }
+
+    /**
+     * Appends a music track that was unlocked.
+     * @param id The music id.
+     */
+    void putMusic(int id) {
+        ensureCapacity(3);
+        buffer.putByte(RECORD_MUSIC);
+        buffer.putWord(id);
+    }
+
+    /**
+     * Applies journaled records to a client whose profile was decoded. Every
+     * applied record is appended to the journal of the client again so that
+     * it stays durable once the journal it was read from is compacted.
+     * Records that no longer fit the client are skipped.
+     * @param client The client.
+     * @param payload The records.
+     * @param offset The offset of the first record.
+     * @param length The length of the records.
+     */
+    static void apply(Client client, byte[] payload, int offset, int length) {
+        ByteBuffer buffer = new ByteBuffer(payload);
+        buffer.offset = offset;
+        while(buffer.offset < offset + length) {
+            int type = buffer.getUbyte();
+            if(type == RECORD_ITEM) {
+                int widgetId = buffer.getUword();
+                int slot = buffer.getUword();
+                int id = buffer.getUword() - 1;
+                int amount = buffer.getDword();
+                ItemContainer container = (ItemContainer) client.widgetItems.get(widgetId);
+                if(container != null && slot < container.ids.length && (id < 0 || Main.itemDefinitions.isValid(id)))
+                    container.set(slot, id, amount);
+            } else if(type == RECORD_SKILL) {
+                int id = buffer.getUbyte();
+                int experience = buffer.getDword();
+                int hash = buffer.getDword();
+                if(id < client.skillExperience.length) {
+                    client.skillExperience[id] = experience;
+                    client.skillHashes[id] = hash;
+                    client.journal.putSkill(id, experience, hash);
+                }
+            } else if(type == RECORD_PATCH) {
+                int patchType = buffer.getUbyte();
+                int patch = buffer.getUbyte();
+                int state = buffer.getDword();
+                long timestamp = buffer.getQword();
+                if(patchType < client.patchStates.length && client.patchStates[patchType] != null &&
+                   patch < client.patchStates[patchType].length) {
+                    client.patchStates[patchType][patch] = state;
+                    client.patchTimestamps[patchType][patch] = timestamp;
+                    client.journal.putPatch(patchType, patch, state, timestamp);
+                }
+            } else if(type == RECORD_MUSIC) {
+                int id = buffer.getUword();
+                if(id >> 3 < client.activeMusic.length) {
+                    client.activeMusic[id >> 3] |= 1 << (id & 7);
+                    client.journal.putMusic(id);
+                }
+            } else
+                throw new RuntimeException("Unknown journal record " + type);
+        }
+    }
+
+    /**
+     * Constructs a new {@link StateJournal};
+     */
+    StateJournal() {
+        buffer = new ByteBuffer(256);
+    }
+}
@@ -0,0 +1,135 @@
+package org.runetekk;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TickWorker.java
+ * @version 1.0.0
+ * @author RuneTekk Development (SiniSoul)
+ */
+public final class TickWorker implements Runnable {
+
+    /**
+     * The {@link Logger} for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(TickWorker.class.getName());
+
+    /**
+     * The client ids of the shard that this worker will update during the
+     * current cycle.
+     */
+    IndexList clients;
+
+    /**
+     * The client ids that threw an exception while being updated. These are
+     * removed by the main handler once every worker has finished.
+     */
+    IndexList failedClients;
+
+    /**
+     * The local thread, null if this worker is run by the main handler.
+     */
+    private Thread thread;
+
+    /**
+     * The local thread is currently paused.
+     */
+    private boolean isPaused;
+
+    /**
+     * The worker currently has a shard to update.
+     */
+    private boolean isActive;
+
+    /**
+     * Initializes the local thread.
+     */
+    private void initialize() {
+        thread = new Thread(this);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Updates the state of every client in the shard of this worker.
+     */
+    void process() {
+        for(int i = 0; i < clients.size; i++) {
+            Client client = Main.clientArray[clients.values[i]];
+            if(client == null)
+                continue;
+            try {
+                Main.updateState(client);
+            } catch(Exception ex) {
+                LOGGER.log(Level.WARNING, "Client disconnected : ", ex);
+                failedClients.add(clients.values[i]);
+            }
+        }
+        clients.clear();
+    }
+
+    /**
+     * Starts updating the shard of this worker on its local thread.
+     */
+    void execute() {
+        synchronized(this) {
+            isActive = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the local thread to finish updating the shard of this worker.
+     */
+    void await() {
+        synchronized(this) {
+            while(isActive) {
+                try {
+                    wait();
+                } catch(InterruptedException ex) {}
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        for(;;) {
+            synchronized(this) {
+                while(!isActive && !isPaused) {
+                    try {
+                        wait();
+                    } catch(InterruptedException ex) {}
+                }
+                if(isPaused)
+                    break;
+            }
+            process();
+            synchronized(this) {
+                isActive = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Destroys this {@link TickWorker}.
+     */
+    void destroy() {
+        synchronized(this) {
+            isPaused = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Constructs a new {@link TickWorker};
+     * @param isThreaded The worker will update its shard on its own thread.
+     */
+    TickWorker(boolean isThreaded) {
+        clients = new IndexList(Main.MAXIMUM_CLIENTS);
+        failedClients = new IndexList(16);
+        if(isThreaded)
+            initialize();
+    }
+}